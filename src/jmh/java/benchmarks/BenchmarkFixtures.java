@@ -0,0 +1,208 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+/**
+ * This writes the input files my benchmarks convert.
+ * Everything comes from a seeded Random, so the same size always gives byte-for-byte the same input.
+ */
+public final class BenchmarkFixtures {
+
+    private static final String[] WORDS = {
+        "file", "convert", "offline", "archive", "document", "sheet", "image", "format",
+        "history", "folder", "report", "quarter", "invoice", "budget", "summary", "draft"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * This makes a fresh temporary folder for one benchmark trial.
+     */
+    public static Path createWorkDir(String prefix) throws IOException {
+        return Files.createTempDirectory("filex-bench-" + prefix);
+    }
+
+    /**
+     * This deletes a work folder and everything in it.
+     */
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public static String sentence(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This writes a CSV file with a header row and the given number of data rows of 8 columns.
+     */
+    public static File writeCsv(Path dir, String name, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = dir.resolve(name).toFile();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("id,name,category,quantity,price,total,region,notes\n");
+            for (int i = 0; i < rows; i++) {
+                int quantity = random.nextInt(1000);
+                double price = random.nextInt(100000) / 100.0;
+                writer.write(i + "," + WORDS[random.nextInt(WORDS.length)] + i + "," + WORDS[random.nextInt(WORDS.length)]
+                    + "," + quantity + "," + price + "," + (quantity * price) + ",region" + random.nextInt(12)
+                    + "," + sentence(random, 4) + "\n");
+            }
+        }
+        return file;
+    }
+
+    /**
+     * This writes an XLSX file with the same shape as writeCsv, streaming the rows so big sheets don't need a big heap.
+     */
+    public static File writeXlsx(Path dir, String name, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = dir.resolve(name).toFile();
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(500);
+             OutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = workbook.createSheet("Sheet1");
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue(i);
+                row.createCell(1).setCellValue(WORDS[random.nextInt(WORDS.length)] + i);
+                row.createCell(2).setCellValue(random.nextInt(1000));
+                row.createCell(3).setCellValue(random.nextInt(100000) / 100.0);
+                row.createCell(4).setCellValue(random.nextBoolean());
+                row.createCell(5).setCellValue(sentence(random, 4));
+            }
+            workbook.write(out);
+            workbook.dispose();
+        }
+        return file;
+    }
+
+    /**
+     * This writes a DOCX file with the given number of paragraphs.
+     */
+    public static File writeDocx(Path dir, String name, int paragraphs, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = dir.resolve(name).toFile();
+        try (XWPFDocument document = new XWPFDocument();
+             OutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < paragraphs; i++) {
+                document.createParagraph().createRun().setText(sentence(random, 12));
+            }
+            document.write(out);
+        }
+        return file;
+    }
+
+    /**
+     * This writes a text-only PDF with the given number of pages, about 45 lines a page.
+     */
+    public static File writePdf(Path dir, String name, int pages, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = dir.resolve(name).toFile();
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.TIMES_ROMAN, 12);
+                    content.setLeading(14.5f);
+                    content.newLineAtOffset(25, 725);
+                    for (int line = 0; line < 45; line++) {
+                        content.showText(sentence(random, 12));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    /**
+     * This writes a square image in the given ImageIO format ("png" or "jpg").
+     * It is a gradient with noise and shapes, so it compresses like a photo rather than a flat colour.
+     */
+    public static File writeImage(Path dir, String name, String format, int size, long seed) throws IOException {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int r = (x * 255 / size + random.nextInt(24)) & 0xFF;
+                int g = (y * 255 / size + random.nextInt(24)) & 0xFF;
+                int b = ((x + y) * 127 / size + random.nextInt(24)) & 0xFF;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        Graphics2D graphics = image.createGraphics();
+        for (int i = 0; i < 20; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            graphics.fillOval(random.nextInt(size), random.nextInt(size), random.nextInt(size / 4 + 1), random.nextInt(size / 4 + 1));
+        }
+        graphics.dispose();
+        File file = dir.resolve(name).toFile();
+        if (!ImageIO.write(image, format, file)) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return file;
+    }
+
+    /**
+     * This writes a folder of files for the ZIP benchmarks, spread over a few sub folders.
+     * Half the files are compressible text and half are random bytes, like a typical project folder.
+     */
+    public static Path writeFolder(Path dir, String name, int fileCount, int fileSizeKb, long seed) throws IOException {
+        Random random = new Random(seed);
+        Path root = Files.createDirectories(dir.resolve(name));
+        byte[] buffer = new byte[fileSizeKb * 1024];
+        for (int i = 0; i < fileCount; i++) {
+            Path folder = Files.createDirectories(root.resolve("sub" + (i % 8)));
+            if (i % 2 == 0) {
+                byte[] text = sentence(random, buffer.length / 6 + 1).getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(text, 0, buffer, 0, buffer.length);
+                Files.write(folder.resolve("file" + i + ".txt"), buffer);
+            } else {
+                random.nextBytes(buffer);
+                Files.write(folder.resolve("file" + i + ".bin"), buffer);
+            }
+        }
+        return root;
+    }
+}
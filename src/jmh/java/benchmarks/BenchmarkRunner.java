@@ -0,0 +1,31 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This is the main class of target/benchmarks.jar.
+ * It takes the normal JMH command line, but always adds the GC profiler so every run reports allocation rates.
+ *
+ * Usage:
+ *   mvn -B -Pbenchmark package -DskipTests
+ *   java -jar target/benchmarks.jar                          (everything)
+ *   java -jar target/benchmarks.jar ZipBenchmark -p fileCount=100
+ *   java -jar target/benchmarks.jar -rf json -rff results.json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This generates a synthetic, deterministic corpus for load testing.
+ * The same specs and seed always produce exactly the same files, so corpora can be regenerated on any machine
+ * instead of being copied around.
+ *
+ * Usage:
+ *   java -cp target/benchmarks.jar benchmarks.CorpusGenerator --out corpus --seed 7 \
+ *        --spec csv:200:5000 --spec xlsx:50:5000 --spec docx:100:200 --spec pdf:100:5 \
+ *        --spec png:100:1024 --spec jpg:100:1024 --spec folder:4:500
+ *
+ * Each --spec is type:count:size, where size means:
+ *   csv, xlsx   rows per file
+ *   docx        paragraphs per file
+ *   pdf         pages per file
+ *   png, jpg    pixels per side
+ *   folder      files per folder (64 KB each, half text and half random bytes)
+ * Files are written to one sub folder per type, e.g. corpus/csv/csv_00000.csv.
+ */
+public class CorpusGenerator {
+
+    /**
+     * One line of the corpus description, e.g. 200 CSV files of 5000 rows.
+     */
+    public static final class Spec {
+        public final String type;
+        public final int count;
+        public final int size;
+
+        public Spec(String type, int count, int size) {
+            this.type = type;
+            this.count = count;
+            this.size = size;
+        }
+
+        public static Spec parse(String text) {
+            String[] parts = text.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("A spec must look like type:count:size, got " + text);
+            }
+            String type = parts[0].toLowerCase(Locale.ROOT);
+            if (!List.of("csv", "xlsx", "docx", "pdf", "png", "jpg", "folder").contains(type)) {
+                throw new IllegalArgumentException("Unknown corpus type: " + type);
+            }
+            return new Spec(type, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        }
+    }
+
+    private static final int FOLDER_FILE_KB = 64;
+
+    /**
+     * This writes every spec into the output folder.
+     * @param outDir The corpus root.
+     * @param specs What to generate.
+     * @param seed The base seed; each file gets its own seed derived from this, its type and its index.
+     * @return The paths of everything generated (files, and folder roots for the folder type).
+     */
+    public static List<Path> generate(Path outDir, List<Spec> specs, long seed) throws IOException {
+        List<Path> generated = new ArrayList<>();
+        for (Spec spec : specs) {
+            Path typeDir = Files.createDirectories(outDir.resolve(spec.type));
+            for (int i = 0; i < spec.count; i++) {
+                long fileSeed = seed * 31 + spec.type.hashCode() * 1_000_003L + i;
+                String name = String.format(Locale.ROOT, "%s_%05d", spec.type, i);
+                generated.add(generateOne(typeDir, name, spec, fileSeed));
+            }
+            System.out.printf("Generated %d %s item(s) of size %d%n", spec.count, spec.type, spec.size);
+        }
+        return generated;
+    }
+
+    private static Path generateOne(Path dir, String name, Spec spec, long seed) throws IOException {
+        switch (spec.type) {
+            case "csv":
+                return BenchmarkFixtures.writeCsv(dir, name + ".csv", spec.size, seed).toPath();
+            case "xlsx":
+                return BenchmarkFixtures.writeXlsx(dir, name + ".xlsx", spec.size, seed).toPath();
+            case "docx":
+                return BenchmarkFixtures.writeDocx(dir, name + ".docx", spec.size, seed).toPath();
+            case "pdf":
+                return BenchmarkFixtures.writePdf(dir, name + ".pdf", spec.size, seed).toPath();
+            case "png":
+                return BenchmarkFixtures.writeImage(dir, name + ".png", "png", spec.size, seed).toPath();
+            case "jpg":
+                return BenchmarkFixtures.writeImage(dir, name + ".jpg", "jpg", spec.size, seed).toPath();
+            case "folder":
+                return BenchmarkFixtures.writeFolder(dir, name, spec.size, FOLDER_FILE_KB, seed);
+            default:
+                throw new IllegalArgumentException("Unknown corpus type: " + spec.type);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path outDir = Path.of("corpus");
+        long seed = 1L;
+        List<Spec> specs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out" -> outDir = Path.of(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--spec" -> specs.add(Spec.parse(args[++i]));
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (specs.isEmpty()) {
+            specs.add(Spec.parse("csv:20:1000"));
+            specs.add(Spec.parse("xlsx:20:1000"));
+            specs.add(Spec.parse("docx:20:100"));
+            specs.add(Spec.parse("pdf:20:5"));
+            specs.add(Spec.parse("png:20:512"));
+            specs.add(Spec.parse("jpg:20:512"));
+            specs.add(Spec.parse("folder:2:100"));
+        }
+        long start = System.nanoTime();
+        List<Path> generated = generate(outDir, specs, seed);
+        System.out.printf("Wrote %d item(s) to %s in %.1f s%n", generated.size(), outDir.toAbsolutePath(),
+            (System.nanoTime() - start) / 1e9);
+    }
+}
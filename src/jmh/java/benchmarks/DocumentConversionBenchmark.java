@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import handlers.FileConversionHandler;
+
+/**
+ * Benchmarks for the DOCX to PDF and PDF to DOCX converters.
+ * The size is paragraphs for the DOCX input and pages for the PDF input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentConversionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private final FileConversionHandler handler = new FileConversionHandler();
+    private Path workDir;
+    private File docxSource;
+    private File pdfSource;
+    private File pdfTarget;
+    private File docxTarget;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkFixtures.createWorkDir("documents");
+        docxSource = BenchmarkFixtures.writeDocx(workDir, "input.docx", size, 42L);
+        pdfSource = BenchmarkFixtures.writePdf(workDir, "input.pdf", Math.max(1, size / 10), 42L);
+        pdfTarget = workDir.resolve("output.pdf").toFile();
+        docxTarget = workDir.resolve("output.docx").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public File docxToPdf() throws IOException {
+        handler.convertDocxToPdf(docxSource, pdfTarget);
+        return pdfTarget;
+    }
+
+    @Benchmark
+    public File pdfToDocx() throws IOException {
+        handler.convertPdfToDocx(pdfSource, docxTarget);
+        return docxTarget;
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import handlers.FileConversionHandler;
+
+/**
+ * Benchmarks for convertImage, one run per format pair and image size (in pixels per side).
+ * Only the pairs the JDK's ImageIO can both read and write are covered; WEBP needs an ImageIO plugin
+ * which isn't on the classpath, so it has no pair here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageConversionBenchmark {
+
+    @Param({"png:jpg", "jpg:png", "png:png", "jpg:jpg"})
+    public String formatPair;
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    private final FileConversionHandler handler = new FileConversionHandler();
+    private Path workDir;
+    private File source;
+    private File target;
+    private String targetFormat;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] formats = formatPair.split(":");
+        targetFormat = formats[1];
+        workDir = BenchmarkFixtures.createWorkDir("images");
+        source = BenchmarkFixtures.writeImage(workDir, "input." + formats[0], formats[0], size, 42L);
+        target = workDir.resolve("output." + targetFormat).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public File convertImage() throws IOException {
+        handler.convertImage(source, target, targetFormat);
+        return target;
+    }
+}
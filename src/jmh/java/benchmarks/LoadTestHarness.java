@@ -0,0 +1,262 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import handlers.FileConversionHandler;
+import handlers.ZipHandler;
+
+/**
+ * This drives the conversion and ZIP paths end to end with N concurrent jobs over a corpus made by CorpusGenerator,
+ * and reports files/s, MB/s, latency percentiles, peak RSS and GC pauses.
+ *
+ * Usage:
+ *   java -cp target/benchmarks.jar benchmarks.LoadTestHarness --corpus corpus --jobs 8 [--mode all|convert|zip] [--repeat 1] [--out load-output]
+ *
+ * Every file in the corpus is converted to its counterpart format (CSV to XLSX, PDF to DOCX, PNG to JPG, ...)
+ * and every folder is zipped. --repeat runs the whole corpus that many times to make a longer run.
+ */
+public class LoadTestHarness {
+
+    /**
+     * One unit of work: a source, where its output goes, and which path it exercises.
+     */
+    private static final class Job {
+        final String kind;
+        final File source;
+        final File target;
+        final String targetFormat;
+        final long inputBytes;
+
+        Job(String kind, File source, File target, String targetFormat, long inputBytes) {
+            this.kind = kind;
+            this.source = source;
+            this.target = target;
+            this.targetFormat = targetFormat;
+            this.inputBytes = inputBytes;
+        }
+    }
+
+    private static final class Result {
+        final String kind;
+        final long nanos;
+        final boolean success;
+
+        Result(String kind, long nanos, boolean success) {
+            this.kind = kind;
+            this.nanos = nanos;
+            this.success = success;
+        }
+    }
+
+    private static final Map<String, String> TARGET_FORMATS = Map.of(
+        "csv", "XLSX", "xlsx", "CSV", "docx", "PDF", "pdf", "DOCX", "png", "JPG", "jpg", "PNG");
+
+    // GC pauses as reported by the collector notifications, in milliseconds
+    private static final ConcurrentLinkedQueue<Long> gcPauses = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws Exception {
+        Path corpus = Path.of("corpus");
+        Path outDir = Path.of("load-output");
+        int jobs = Runtime.getRuntime().availableProcessors();
+        String mode = "all";
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--corpus" -> corpus = Path.of(args[++i]);
+                case "--out" -> outDir = Path.of(args[++i]);
+                case "--jobs" -> jobs = Integer.parseInt(args[++i]);
+                case "--mode" -> mode = args[++i].toLowerCase(Locale.ROOT);
+                case "--repeat" -> repeat = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        List<Job> work = collectJobs(corpus, outDir, mode, repeat);
+        if (work.isEmpty()) {
+            System.err.println("Nothing to do, generate a corpus first with benchmarks.CorpusGenerator");
+            return;
+        }
+        System.out.printf("Running %d job(s) from %s with %d concurrent worker(s)%n", work.size(), corpus, jobs);
+
+        installGcListener();
+        long gcCountBefore = totalGcCount();
+        long gcTimeBefore = totalGcTime();
+
+        ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+        AtomicLong inputBytes = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Job job : work) {
+            futures.add(executor.submit(() -> {
+                long jobStart = System.nanoTime();
+                boolean success = run(job);
+                results.add(new Result(job.kind, System.nanoTime() - jobStart, success));
+                inputBytes.addAndGet(job.inputBytes);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        report(new ArrayList<>(results), elapsed, inputBytes.get(), jobs,
+            totalGcCount() - gcCountBefore, totalGcTime() - gcTimeBefore);
+    }
+
+    private static boolean run(Job job) {
+        if (job.kind.equals("folder->ZIP")) {
+            job.target.delete();
+            return new ZipHandler().createZip(job.source, job.target, null);
+        }
+        return new FileConversionHandler().convertFile(job.source, job.target, job.targetFormat);
+    }
+
+    private static List<Job> collectJobs(Path corpus, Path outDir, String mode, int repeat) throws IOException {
+        List<Job> work = new ArrayList<>();
+        for (int round = 0; round < repeat; round++) {
+            Path roundDir = Files.createDirectories(outDir.resolve("round" + round));
+            if (!mode.equals("zip")) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(TARGET_FORMATS).entrySet()) {
+                    Path typeDir = corpus.resolve(entry.getKey());
+                    if (!Files.isDirectory(typeDir)) {
+                        continue;
+                    }
+                    try (Stream<Path> files = Files.list(typeDir)) {
+                        for (Path file : files.sorted().toList()) {
+                            String base = file.getFileName().toString().replaceFirst("[.][^.]+$", "");
+                            File target = roundDir.resolve(base + "." + entry.getValue().toLowerCase(Locale.ROOT)).toFile();
+                            work.add(new Job(entry.getKey().toUpperCase(Locale.ROOT) + "->" + entry.getValue(),
+                                file.toFile(), target, entry.getValue(), Files.size(file)));
+                        }
+                    }
+                }
+            }
+            Path folderDir = corpus.resolve("folder");
+            if (!mode.equals("convert") && Files.isDirectory(folderDir)) {
+                try (Stream<Path> folders = Files.list(folderDir)) {
+                    for (Path folder : folders.sorted().toList()) {
+                        File target = roundDir.resolve(folder.getFileName() + ".zip").toFile();
+                        work.add(new Job("folder->ZIP", folder.toFile(), target, "ZIP", folderSize(folder)));
+                    }
+                }
+            }
+        }
+        return work;
+    }
+
+    private static long folderSize(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static void report(List<Result> results, long elapsedNanos, long inputBytes, int jobs, long gcCount, long gcTimeMs) {
+        double seconds = elapsedNanos / 1e9;
+        long failures = results.stream().filter(r -> !r.success).count();
+        System.out.println();
+        System.out.printf("Jobs:          %d (%d failed) with %d worker(s)%n", results.size(), failures, jobs);
+        System.out.printf("Wall time:     %.2f s%n", seconds);
+        System.out.printf("Throughput:    %.1f files/s, %.1f MB/s%n", results.size() / seconds, inputBytes / 1048576.0 / seconds);
+        System.out.println();
+        System.out.printf("%-14s %7s %10s %10s %10s %10s %10s%n", "Path", "Count", "p50 ms", "p90 ms", "p99 ms", "max ms", "Failed");
+        printLatencyRow("all", results);
+        Map<String, List<Result>> byKind = new TreeMap<>();
+        for (Result result : results) {
+            byKind.computeIfAbsent(result.kind, k -> new ArrayList<>()).add(result);
+        }
+        for (Map.Entry<String, List<Result>> entry : byKind.entrySet()) {
+            printLatencyRow(entry.getKey(), entry.getValue());
+        }
+        System.out.println();
+        System.out.printf("Peak RSS:      %s%n", peakRss());
+        System.out.printf("Heap max:      %d MB%n", Runtime.getRuntime().maxMemory() / 1048576);
+        long[] pauses = gcPauses.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("GC:            %d collection(s), %d ms total", gcCount, gcTimeMs);
+        if (pauses.length > 0) {
+            System.out.printf(", pause p50 %d ms, p99 %d ms, max %d ms", percentile(pauses, 50), percentile(pauses, 99), pauses[pauses.length - 1]);
+        }
+        System.out.println();
+    }
+
+    private static void printLatencyRow(String name, List<Result> results) {
+        long[] millis = results.stream().mapToLong(r -> TimeUnit.NANOSECONDS.toMillis(r.nanos)).sorted().toArray();
+        long failed = results.stream().filter(r -> !r.success).count();
+        System.out.printf("%-14s %7d %10d %10d %10d %10d %10d%n", name, millis.length,
+            percentile(millis, 50), percentile(millis, 90), percentile(millis, 99), millis[millis.length - 1], failed);
+    }
+
+    private static long percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * This reads the peak resident set size from /proc, which is only there on Linux.
+     */
+    private static String peakRss() {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return "n/a (needs /proc)";
+        }
+        try {
+            return Files.readAllLines(status).stream()
+                .filter(line -> line.startsWith("VmHWM:"))
+                .map(line -> Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024 + " MB")
+                .findFirst().orElse("n/a");
+        } catch (IOException e) {
+            return "n/a (" + e.getMessage() + ")";
+        }
+    }
+
+    private static void installGcListener() {
+        NotificationListener listener = (notification, handback) -> {
+            if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                // Concurrent cycles aren't pauses, only count the stop-the-world ones
+                if (!info.getGcCause().equals("No GC") && !info.getGcName().contains("Cycles")) {
+                    gcPauses.add(info.getGcInfo().getDuration());
+                }
+            }
+        };
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    private static long totalGcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long totalGcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
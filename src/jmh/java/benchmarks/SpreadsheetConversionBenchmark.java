@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import handlers.FileConversionHandler;
+
+/**
+ * Benchmarks for the CSV to XLSX and XLSX to CSV converters, sized in rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SpreadsheetConversionBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int rows;
+
+    private final FileConversionHandler handler = new FileConversionHandler();
+    private Path workDir;
+    private File csvSource;
+    private File xlsxSource;
+    private File xlsxTarget;
+    private File csvTarget;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkFixtures.createWorkDir("spreadsheets");
+        csvSource = BenchmarkFixtures.writeCsv(workDir, "input.csv", rows, 42L);
+        xlsxSource = BenchmarkFixtures.writeXlsx(workDir, "input.xlsx", rows, 42L);
+        xlsxTarget = workDir.resolve("output.xlsx").toFile();
+        csvTarget = workDir.resolve("output.csv").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public File csvToXlsx() throws IOException {
+        handler.convertCsvToXlsx(csvSource, xlsxTarget);
+        return xlsxTarget;
+    }
+
+    @Benchmark
+    public File xlsxToCsv() throws IOException {
+        handler.convertXlsxToCsv(xlsxSource, csvTarget);
+        return csvTarget;
+    }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import handlers.ZipHandler;
+
+/**
+ * Benchmarks for ZipHandler.zipFolder, across folder sizes and with and without a password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fileCount;
+
+    @Param({"16", "1024"})
+    public int fileSizeKb;
+
+    @Param({"false", "true"})
+    public boolean encrypted;
+
+    private final ZipHandler handler = new ZipHandler();
+    private Path workDir;
+    private File sourceFolder;
+    private File targetZip;
+    private String password;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkFixtures.createWorkDir("zip");
+        sourceFolder = BenchmarkFixtures.writeFolder(workDir, "source", fileCount, fileSizeKb, 42L).toFile();
+        targetZip = workDir.resolve("output.zip").toFile();
+        password = encrypted ? "benchmark-password" : null;
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteTarget() {
+        // zipFolder replaces an existing archive, but deleting it first keeps every invocation measuring a fresh create
+        targetZip.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public File zipFolder() throws IOException {
+        handler.zipFolder(sourceFolder, targetZip, password);
+        return targetZip;
+    }
+}
@@ -1,19 +1,26 @@
 package com.filex;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 
 import database.DatabaseManager;
+import database.HistoryRecorder;
+import database.HistoryRetention;
+import diagnostics.FlightRecorderManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import utils.SettingsManager;
 
 public class App extends Application {
 
     @Override
     public void start(Stage primaryStage) throws IOException {
         DatabaseManager.initialize();
+        HistoryRetention.getInstance().start();
         Parent root = FXMLLoader.load(getClass().getResource("/ui/MainUI.fxml"));
         Scene scene = new Scene(root, 1000, 700);
         primaryStage.setTitle("FileX - An Offline File Converter");
@@ -24,7 +31,39 @@ public class App extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        HistoryRetention.getInstance().shutdown();
+        HistoryRecorder.getInstance().shutdown();
+        DatabaseManager.shutdown();
+        FlightRecorderManager.stop();
+        SettingsManager.getInstance().shutdown();
+    }
+
     public static void main(String[] args) {
+        startFlightRecordingIfRequested(args);
         launch(args);
     }
-}
\ No newline at end of file
+
+    /**
+     * This starts the continuous flight recording when "--jfr" (or "--jfr=file.jfr") is passed,
+     * or when it has been switched on in the settings.
+     */
+    private static void startFlightRecordingIfRequested(String[] args) {
+        SettingsManager settings = SettingsManager.getInstance();
+        String destination = null;
+        for (String arg : args) {
+            if (arg.equals("--jfr")) {
+                destination = FlightRecorderManager.DEFAULT_DESTINATION;
+            } else if (arg.startsWith("--jfr=")) {
+                destination = arg.substring("--jfr=".length());
+            }
+        }
+        if (destination == null && settings.getEnableFlightRecording()) {
+            destination = FlightRecorderManager.DEFAULT_DESTINATION;
+        }
+        if (destination != null) {
+            FlightRecorderManager.start(Path.of(destination), settings.getFlightRecordingMaxSizeMb(), Duration.ofHours(6));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * This holds my long-lived SQLite connections: one writer and a small pool of read-only readers.
+ * The database runs in WAL mode, so readers never wait for the writer and the writer never waits for readers.
+ * All writes go through the single writer connection under a lock, which is exactly how SQLite wants to be used.
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    private static final int READER_POOL_SIZE = 3;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+    private static final int CACHE_SIZE_KB = 8 * 1024;
+    private static final long MMAP_SIZE_BYTES = 256L * 1024 * 1024;
+
+    private final String url;
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final BlockingQueue<PooledConnection> idleReaders = new ArrayBlockingQueue<>(READER_POOL_SIZE);
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private PooledConnection writer;
+    private volatile boolean closed;
+
+    public ConnectionManager(String url) {
+        this.url = url;
+    }
+
+    /**
+     * This runs work on the writer connection, one caller at a time, in auto-commit mode.
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        writerLock.lock();
+        try {
+            return work.execute(writer());
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * This runs work on the writer connection inside one transaction, committing if it returns and rolling back if it throws.
+     */
+    public <T> T writeInTransaction(SqlWork<T> work) throws SQLException {
+        writerLock.lock();
+        try {
+            PooledConnection connection = writer();
+            Connection conn = connection.getConnection();
+            conn.setAutoCommit(false);
+            try {
+                T result = work.execute(connection);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * This runs work on a read-only connection from the pool.
+     * If every reader is busy it waits for one to come back, opening a new one only while the pool isn't full.
+     */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        PooledConnection reader = borrowReader();
+        try {
+            return work.execute(reader);
+        } finally {
+            if (closed || !idleReaders.offer(reader)) {
+                reader.close();
+                openReaders.decrementAndGet();
+            }
+        }
+    }
+
+    private PooledConnection borrowReader() throws SQLException {
+        ensureOpen();
+        PooledConnection reader = idleReaders.poll();
+        if (reader != null) {
+            return reader;
+        }
+        if (openReaders.incrementAndGet() <= READER_POOL_SIZE) {
+            try {
+                // A read-only connection can't create the WAL files, so the writer has to have opened the database first
+                write(connection -> null);
+                return new PooledConnection(openConnection(true));
+            } catch (SQLException e) {
+                openReaders.decrementAndGet();
+                throw e;
+            }
+        }
+        openReaders.decrementAndGet();
+        try {
+            reader = idleReaders.poll(BUSY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        if (reader == null) {
+            throw new SQLException("Timed out waiting for a database connection");
+        }
+        return reader;
+    }
+
+    private PooledConnection writer() throws SQLException {
+        ensureOpen();
+        if (writer == null) {
+            writer = new PooledConnection(openConnection(false));
+        }
+        return writer;
+    }
+
+    /**
+     * This opens a configured connection.
+     * The writer switches the database to WAL (which is stored in the file, so it only really happens once);
+     * readers are opened read-only and just pick up the cache and mmap settings.
+     * A brand new database is put in incremental auto-vacuum mode first, since that can only be chosen before
+     * anything (switching to WAL included) has been written to the file.
+     */
+    Connection openConnection(boolean readOnly) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        config.setCacheSize(-CACHE_SIZE_KB); // negative means KiB rather than pages
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(MMAP_SIZE_BYTES));
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        if (readOnly) {
+            config.setReadOnly(true);
+        } else {
+            config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        }
+        Connection connection = DriverManager.getConnection(url, config.toProperties());
+        if (!readOnly) {
+            try (Statement stmt = connection.createStatement()) {
+                // Only takes on an empty database; an existing one keeps its mode until a VACUUM
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("PRAGMA journal_mode = WAL");
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("The database has been shut down");
+        }
+    }
+
+    /**
+     * This closes every connection. Work that is still running finishes first for the writer,
+     * and readers are closed as they come back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writerLock.lock();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } finally {
+            writerLock.unlock();
+        }
+        PooledConnection reader;
+        while ((reader = idleReaders.poll()) != null) {
+            reader.close();
+            openReaders.decrementAndGet();
+        }
+    }
+}
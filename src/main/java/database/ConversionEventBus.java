@@ -0,0 +1,58 @@
+package database;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import models.ConversionRecord;
+
+/**
+ * This is my in-process event bus for finished conversions.
+ * HistoryRecorder publishes every batch once it has been committed, so the records already have their database ids,
+ * and anything that shows the history (like an open History window) subscribes to hear about them instead of
+ * re-reading the whole table. Listeners are called on the thread that publishes, which is the history writer,
+ * so they should hand the records off rather than do slow work there.
+ */
+public class ConversionEventBus {
+
+    private static ConversionEventBus instance;
+
+    private final List<Consumer<List<ConversionRecord>>> listeners = new CopyOnWriteArrayList<>();
+
+    private ConversionEventBus() {
+    }
+
+    public static synchronized ConversionEventBus getInstance() {
+        if (instance == null) {
+            instance = new ConversionEventBus();
+        }
+        return instance;
+    }
+
+    public void subscribe(Consumer<List<ConversionRecord>> listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(Consumer<List<ConversionRecord>> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * This tells every listener about records that have just been saved.
+     * A listener that throws is reported and skipped, it doesn't stop the others hearing about the batch.
+     * @param records The saved records, in the order they were written.
+     */
+    public void publish(List<ConversionRecord> records) {
+        if (records.isEmpty() || listeners.isEmpty()) {
+            return;
+        }
+        List<ConversionRecord> published = List.copyOf(records);
+        for (Consumer<List<ConversionRecord>> listener : listeners) {
+            try {
+                listener.accept(published);
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering conversion records: " + e.getMessage());
+            }
+        }
+    }
+}
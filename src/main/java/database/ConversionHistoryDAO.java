@@ -1,43 +1,161 @@
 package database;
 
-import database.DatabaseManager;
-import java.sql.Connection;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import diagnostics.DatabaseEvent;
 import models.ConversionRecord;
+import models.ConversionStatistics;
 
 /**
  * This is my data access object for the ConversionRecord.
  * This class provides the methods that are used to interact with my conversion_history table.
+ * It borrows connections from the shared ConnectionManager, so the SQL below is only compiled once per connection.
  */
 public class ConversionHistoryDAO {
 
+    private static final String INSERT_SQL = "INSERT INTO conversion_history(source_path, target_path, source_format, target_format, success, timestamp, duration_ms, input_bytes, output_bytes, error_message) VALUES(?,?,?,?,?,?,?,?,?,?)";
+    private static final String SELECT_ALL_SQL = "SELECT * FROM conversion_history ORDER BY timestamp ASC";
+    private static final String LAST_ID_SQL = "SELECT last_insert_rowid()";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM conversion_history";
+    private static final String SELECT_BY_ID_SQL = "SELECT * FROM conversion_history WHERE id = ?";
+    private static final String PAIR_STATISTICS_SQL = "SELECT NULL, source_format, target_format, SUM(conversions), SUM(failures), SUM(input_bytes), SUM(output_bytes), SUM(duration_ms) "
+            + "FROM history_daily_rollup WHERE day BETWEEN ? AND ? GROUP BY source_format, target_format ORDER BY SUM(conversions) DESC";
+    private static final String DAILY_STATISTICS_SQL = "SELECT day, source_format, target_format, conversions, failures, input_bytes, output_bytes, duration_ms "
+            + "FROM history_daily_rollup WHERE day BETWEEN ? AND ? ORDER BY day, source_format, target_format";
+    private static final String SOURCE_FORMAT_COUNTS_SQL = "SELECT source_format, COUNT(*) FROM conversion_history GROUP BY source_format";
+    private static final String TARGET_FORMAT_COUNTS_SQL = "SELECT target_format, COUNT(*) FROM conversion_history GROUP BY target_format";
+
+    private final ConnectionManager connectionManager;
+
+    public ConversionHistoryDAO() {
+        this(DatabaseManager.getConnectionManager());
+    }
+
+    public ConversionHistoryDAO(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
     /**
      * This method nserts a new conversion record into the database.
      * @param record The ConversionRecord object to insert.
      */
     public void insertRecord(ConversionRecord record) {
-        String sql = "INSERT INTO conversion_history(source_path, target_path, source_format, target_format, success, timestamp) VALUES(?,?,?,?,?,?)";
-        try (Connection conn = DatabaseManager.connect();
-            PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, record.getSourcePath());
-            pstmt.setString(2, record.getTargetPath());
-            pstmt.setString(3, record.getSourceFormat());
-            pstmt.setString(4, record.getTargetFormat());
-            pstmt.setBoolean(5, record.isSuccess());
-            pstmt.setTimestamp(6, Timestamp.valueOf(record.getTimestamp()));
-            pstmt.executeUpdate();
+        DatabaseEvent event = DatabaseEvent.start("insert");
+        int rows = 0;
+        boolean success = false;
+        try {
+            rows = connectionManager.write(connection -> {
+                PreparedStatement pstmt = connection.prepare(INSERT_SQL);
+                bindRecord(pstmt, record);
+                return pstmt.executeUpdate();
+            });
+            success = true;
         } catch (SQLException e) {
             System.err.println("Error inserting record: " + e.getMessage());
+        } finally {
+            event.complete(rows, success);
+        }
+    }
+
+    /**
+     * This inserts a batch of records in a single transaction, which is much cheaper than one commit per record.
+     * Each record is given the id it was saved under.
+     * @param records The records to insert.
+     * @return The number of records inserted, 0 if the batch failed.
+     */
+    public int insertRecords(List<ConversionRecord> records) {
+        DatabaseEvent event = DatabaseEvent.start("insertBatch");
+        int rows = 0;
+        boolean success = false;
+        try {
+            rows = connectionManager.writeInTransaction(connection -> {
+                PreparedStatement pstmt = connection.prepare(INSERT_SQL);
+                for (ConversionRecord record : records) {
+                    bindRecord(pstmt, record);
+                    pstmt.addBatch();
+                }
+                int inserted = 0;
+                for (int count : pstmt.executeBatch()) {
+                    inserted += Math.max(count, 0);
+                }
+                assignIds(connection, records);
+                return inserted;
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error inserting records: " + e.getMessage());
+        } finally {
+            event.complete(rows, success);
+        }
+        return rows;
+    }
+
+    /**
+     * AUTOINCREMENT ids are handed out in order and only the one writer connection inserts, so a batch inserted in
+     * one transaction has consecutive ids ending at last_insert_rowid().
+     */
+    private void assignIds(PooledConnection connection, List<ConversionRecord> records) throws SQLException {
+        try (ResultSet rs = connection.prepare(LAST_ID_SQL).executeQuery()) {
+            if (rs.next()) {
+                long firstId = rs.getLong(1) - records.size() + 1;
+                for (int i = 0; i < records.size(); i++) {
+                    records.get(i).setId((int) (firstId + i));
+                }
+            }
+        }
+    }
+
+    private void bindRecord(PreparedStatement pstmt, ConversionRecord record) throws SQLException {
+        pstmt.setString(1, record.getSourcePath());
+        pstmt.setString(2, record.getTargetPath());
+        pstmt.setString(3, record.getSourceFormat());
+        pstmt.setString(4, record.getTargetFormat());
+        pstmt.setBoolean(5, record.isSuccess());
+        pstmt.setLong(6, toEpochMillis(record.getTimestamp()));
+        setNullableLong(pstmt, 7, record.getDurationMs());
+        setNullableLong(pstmt, 8, record.getInputBytes());
+        setNullableLong(pstmt, 9, record.getOutputBytes());
+        pstmt.setString(10, record.getErrorMessage());
+    }
+
+    private void setNullableLong(PreparedStatement pstmt, int index, Long value) throws SQLException {
+        if (value == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setLong(index, value);
         }
     }
 
+    private Long getNullableLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Timestamps are stored as epoch milliseconds; the records hold them as local date-times.
+     */
+    static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static LocalDateTime fromEpochMillis(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
     /**
      * This adds a new conversion record to the database.
      * This is a convenience method that calls insertRecord.
@@ -53,40 +171,426 @@ public class ConversionHistoryDAO {
      */
     public List<ConversionRecord> getAllRecords() {
         List<ConversionRecord> records = new ArrayList<>();
-        String sql = "SELECT * FROM conversion_history ORDER BY timestamp ASC";
-        try (Connection conn = DatabaseManager.connect();
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                records.add(new ConversionRecord(
-                        rs.getInt("id"),
-                        rs.getString("source_path"),
-                        rs.getString("target_path"),
-                        rs.getString("source_format"),
-                        rs.getString("target_format"),
-                        rs.getBoolean("success"),
-                        rs.getTimestamp("timestamp").toLocalDateTime()
-                ));
-            }
+        DatabaseEvent event = DatabaseEvent.start("selectAll");
+        boolean success = false;
+        try {
+            connectionManager.read(connection -> {
+                try (ResultSet rs = connection.prepare(SELECT_ALL_SQL).executeQuery()) {
+                    while (rs.next()) {
+                        records.add(readRecord(rs));
+                    }
+                }
+                return null;
+            });
+            success = true;
         } catch (SQLException e) {
             System.err.println("Error retrieving records: " + e.getMessage());
+        } finally {
+            event.complete(records.size(), success);
         }
         return records;
     }
 
     /**
-     * THis clears asll the records from the conversion_history table.
+     * This reads a single record with everything saved about it.
+     * @param id The record's id.
+     * @return The record, or null if there is no such record or it couldn't be read.
+     */
+    public ConversionRecord getRecord(int id) {
+        DatabaseEvent event = DatabaseEvent.start("selectById");
+        ConversionRecord record = null;
+        boolean success = false;
+        try {
+            record = connectionManager.read(connection -> {
+                PreparedStatement pstmt = connection.prepare(SELECT_BY_ID_SQL);
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? readRecord(rs) : null;
+                }
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error retrieving record " + id + ": " + e.getMessage());
+        } finally {
+            event.complete(record == null ? 0 : 1, success);
+        }
+        return record;
+    }
+
+    /**
+     * This reads one page of the whole history in (timestamp, id) order.
+     * @param cursor Where the previous page ended, or HistoryCursor.START for the first page.
+     * @param limit The maximum number of records to return.
+     * @return Up to limit records; fewer means there are no more pages.
+     */
+    public List<ConversionRecord> getRecordsPage(HistoryCursor cursor, int limit) {
+        return getRecordsPage(HistoryFilter.ALL, cursor, limit);
+    }
+
+    /**
+     * This reads one page of the filtered history in (timestamp, id) order.
+     * The filter becomes a parameterized WHERE clause and the cursor seeks straight to where the last page ended,
+     * so each page is an index range scan instead of skipping over rows like OFFSET would.
+     * @param filter Which records to include.
+     * @param cursor Where the previous page ended, or HistoryCursor.START for the first page.
+     * @param limit The maximum number of records to return.
+     * @return Up to limit records; fewer means there are no more pages.
+     */
+    public List<ConversionRecord> getRecordsPage(HistoryFilter filter, HistoryCursor cursor, int limit) {
+        List<Object> parameters = new ArrayList<>();
+        List<String> cursorConditions = new ArrayList<>();
+        List<Object> cursorParameters = new ArrayList<>();
+        if (!cursor.isStart()) {
+            cursorConditions.add("(timestamp, id) > (?, ?)");
+            cursorParameters.add(cursor.getEpochMillis());
+            cursorParameters.add(cursor.getId());
+        }
+        StringBuilder sql = new StringBuilder(filteredSelect(filter, cursorConditions, cursorParameters, parameters));
+        sql.append(" ORDER BY timestamp ASC, id ASC LIMIT ?");
+        parameters.add(limit);
+
+        List<ConversionRecord> records = new ArrayList<>(limit);
+        DatabaseEvent event = DatabaseEvent.start("selectPage");
+        boolean success = false;
+        try {
+            connectionManager.read(connection -> {
+                // Each combination of filters is its own SQL string, so each one is compiled once and then reused
+                PreparedStatement pstmt = connection.prepare(sql.toString());
+                bindParameters(pstmt, parameters);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        records.add(readRecord(rs));
+                    }
+                }
+                return null;
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error retrieving records: " + e.getMessage());
+        } finally {
+            event.complete(records.size(), success);
+        }
+        return records;
+    }
+
+    /**
+     * This counts the records that pass a filter.
+     * @param filter Which records to count.
+     * @return The number of matching records, or 0 if they couldn't be counted.
+     */
+    public long countRecords(HistoryFilter filter) {
+        List<Object> parameters = new ArrayList<>();
+        String select = filteredSelect(filter, List.of(), List.of(), parameters);
+        // A single SELECT is counted directly, so SQLite can count from an index; a UNION ALL has to be wrapped
+        String sql = filter.getFormat() == null ? select.replaceFirst("SELECT \\*", "SELECT COUNT(*)")
+                : "SELECT COUNT(*) FROM (" + select + ")";
+        DatabaseEvent event = DatabaseEvent.start("count");
+        long count = 0;
+        boolean success = false;
+        try {
+            count = connectionManager.read(connection -> {
+                PreparedStatement pstmt = connection.prepare(sql);
+                bindParameters(pstmt, parameters);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error counting records: " + e.getMessage());
+        } finally {
+            event.complete(1, success);
+        }
+        return count;
+    }
+
+    /**
+     * This reads every record that passes the filter, in (timestamp, id) order, and hands them to sink one at a time.
+     * It is a single forward-only query read fetchSize rows at a time and nothing is kept once the sink has it,
+     * so memory stays the same however big the history is. Unlike the other methods, failures are thrown rather
+     * than logged, since a caller writing an export has to know it is incomplete.
+     * @param filter Which records to read.
+     * @param fetchSize How many rows the driver fetches at a time.
+     * @param sink Receives each record.
+     * @return The number of records read.
+     * @throws SQLException If the history can't be read.
+     * @throws IOException If the sink fails.
+     */
+    public long streamRecords(HistoryFilter filter, int fetchSize, RecordSink sink) throws SQLException, IOException {
+        List<Object> parameters = new ArrayList<>();
+        String sql = filteredSelect(filter, List.of(), List.of(), parameters) + " ORDER BY timestamp ASC, id ASC";
+        DatabaseEvent event = DatabaseEvent.start("stream");
+        long[] rows = {0};
+        boolean success = false;
+        try {
+            connectionManager.read(connection -> {
+                // Not from the statement cache: it is used once, and must not keep a half-read cursor open afterwards
+                try (PreparedStatement pstmt = connection.getConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    pstmt.setFetchSize(fetchSize);
+                    bindParameters(pstmt, parameters);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            sink.accept(readRecord(rs));
+                            rows[0]++;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+            success = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            event.complete((int) Math.min(rows[0], Integer.MAX_VALUE), success);
+        }
+        return rows[0];
+    }
+
+    /**
+     * This builds the SELECT for the records that pass filter and the extra conditions (like a page cursor), adding
+     * the values to parameters in the same order; the caller adds ORDER BY and LIMIT.
+     * A format filter matches the source or the target format. An OR across the two columns leaves SQLite no index
+     * to read in order, so it becomes a UNION ALL of one lookup per format index instead, the second leaving out what
+     * the first already has. SQLite merges the two ordered (format, timestamp, id) range scans, so a filtered page
+     * still stops after limit rows.
+     */
+    private String filteredSelect(HistoryFilter filter, List<String> extraConditions, List<Object> extraParameters,
+                                  List<Object> parameters) {
+        List<Object> common = new ArrayList<>();
+        List<String> conditions = filterConditions(filter, common);
+        conditions.addAll(extraConditions);
+        common.addAll(extraParameters);
+        if (filter.getFormat() == null) {
+            parameters.addAll(common);
+            return select(conditions);
+        }
+        List<String> bySource = new ArrayList<>(conditions);
+        bySource.add("source_format = ?");
+        parameters.addAll(common);
+        parameters.add(filter.getFormat());
+        List<String> byTarget = new ArrayList<>(conditions);
+        byTarget.add("target_format = ?");
+        byTarget.add("source_format <> ?");
+        parameters.addAll(common);
+        parameters.add(filter.getFormat());
+        parameters.add(filter.getFormat());
+        return select(bySource) + " UNION ALL " + select(byTarget);
+    }
+
+    private static String select(List<String> conditions) {
+        return "SELECT * FROM conversion_history" + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions));
+    }
+
+    /**
+     * This turns a filter's status, time and search text into WHERE conditions, adding their values to parameters in
+     * the same order. The format is left to filteredSelect.
+     */
+    private List<String> filterConditions(HistoryFilter filter, List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.getSuccess() != null) {
+            conditions.add("success = ?");
+            parameters.add(filter.getSuccess());
+        }
+        if (filter.getSince() != null) {
+            conditions.add("timestamp >= ?");
+            parameters.add(filter.getSince());
+        }
+        if (filter.getUntil() != null) {
+            conditions.add("timestamp < ?");
+            parameters.add(filter.getUntil());
+        }
+        if (filter.getSearchText() != null) {
+            String text = filter.getSearchText();
+            if (text.length() >= 3) {
+                // The trigram index answers any substring of 3 or more characters, quoted so it is matched literally
+                conditions.add("id IN (SELECT rowid FROM conversion_history_fts WHERE conversion_history_fts MATCH ?)");
+                parameters.add("\"" + text.replace("\"", "\"\"") + "\"");
+            } else {
+                // One or two characters are too short for trigrams, so those fall back to a scan
+                String pattern = "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+                conditions.add("(source_path LIKE ? ESCAPE '\\' OR target_path LIKE ? ESCAPE '\\' OR source_format LIKE ? ESCAPE '\\' OR target_format LIKE ? ESCAPE '\\')");
+                for (int i = 0; i < 4; i++) {
+                    parameters.add(pattern);
+                }
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * This counts every record in the history.
+     * @return The number of records, or 0 if they couldn't be counted.
+     */
+    public long countRecords() {
+        DatabaseEvent event = DatabaseEvent.start("count");
+        long count = 0;
+        boolean success = false;
+        try {
+            count = connectionManager.read(connection -> {
+                try (ResultSet rs = connection.prepare(COUNT_SQL).executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error counting records: " + e.getMessage());
+        } finally {
+            event.complete(1, success);
+        }
+        return count;
+    }
+
+    /**
+     * This counts the records per format, counting a record once for its source format and once for its target
+     * format (a PDF to DOCX conversion counts towards both). The counts come from GROUP BY queries that SQLite answers
+     * from the format indexes alone, without reading the table.
+     * @return The number of records per format, sorted by format name.
+     */
+    public Map<String, Long> getFormatCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        DatabaseEvent event = DatabaseEvent.start("formatCounts");
+        boolean success = false;
+        try {
+            connectionManager.read(connection -> {
+                for (String sql : new String[] {SOURCE_FORMAT_COUNTS_SQL, TARGET_FORMAT_COUNTS_SQL}) {
+                    try (ResultSet rs = connection.prepare(sql).executeQuery()) {
+                        while (rs.next()) {
+                            counts.merge(rs.getString(1), rs.getLong(2), Long::sum);
+                        }
+                    }
+                }
+                return null;
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error counting formats: " + e.getMessage());
+        } finally {
+            event.complete(counts.size(), success);
+        }
+        return counts;
+    }
+
+    /**
+     * This totals the conversions per format pair over a period, busiest pair first.
+     * It only reads history_daily_rollup, one row per day and pair, so it costs the same however many records
+     * the period holds, and it still covers records that retention has since removed.
+     * @param from The first day to include.
+     * @param to The last day to include.
+     * @return One line per format pair, with no day.
+     */
+    public List<ConversionStatistics> getPairStatistics(LocalDate from, LocalDate to) {
+        return readStatistics("pairStatistics", PAIR_STATISTICS_SQL, from, to);
+    }
+
+    /**
+     * This reads the daily totals per format pair over a period, for charts like conversions per format per day.
+     * Like getPairStatistics it only reads the rollups.
+     * @param from The first day to include.
+     * @param to The last day to include.
+     * @return One line per day and format pair that had conversions, in day order.
+     */
+    public List<ConversionStatistics> getDailyStatistics(LocalDate from, LocalDate to) {
+        return readStatistics("dailyStatistics", DAILY_STATISTICS_SQL, from, to);
+    }
+
+    private List<ConversionStatistics> readStatistics(String operation, String sql, LocalDate from, LocalDate to) {
+        List<ConversionStatistics> statistics = new ArrayList<>();
+        DatabaseEvent event = DatabaseEvent.start(operation);
+        boolean success = false;
+        try {
+            connectionManager.read(connection -> {
+                PreparedStatement pstmt = connection.prepare(sql);
+                // Days are stored as ISO text, which sorts the same way the dates do
+                pstmt.setString(1, from.toString());
+                pstmt.setString(2, to.toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String day = rs.getString(1);
+                        statistics.add(new ConversionStatistics(
+                                day == null ? null : LocalDate.parse(day),
+                                rs.getString(2),
+                                rs.getString(3),
+                                rs.getLong(4),
+                                rs.getLong(5),
+                                rs.getLong(6),
+                                rs.getLong(7),
+                                rs.getLong(8)
+                        ));
+                    }
+                }
+                return null;
+            });
+            success = true;
+        } catch (SQLException e) {
+            System.err.println("Error reading statistics: " + e.getMessage());
+        } finally {
+            event.complete(statistics.size(), success);
+        }
+        return statistics;
+    }
+
+    private void bindParameters(PreparedStatement pstmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            Object parameter = parameters.get(i);
+            if (parameter instanceof LocalDateTime) {
+                pstmt.setLong(i + 1, toEpochMillis((LocalDateTime) parameter));
+            } else if (parameter instanceof Boolean) {
+                pstmt.setBoolean(i + 1, (Boolean) parameter);
+            } else if (parameter instanceof Integer) {
+                pstmt.setInt(i + 1, (Integer) parameter);
+            } else if (parameter instanceof Long) {
+                pstmt.setLong(i + 1, (Long) parameter);
+            } else {
+                pstmt.setString(i + 1, (String) parameter);
+            }
+        }
+    }
+
+    private ConversionRecord readRecord(ResultSet rs) throws SQLException {
+        long timestamp = rs.getLong("timestamp");
+        ConversionRecord record = new ConversionRecord(
+                rs.getInt("id"),
+                rs.getString("source_path"),
+                rs.getString("target_path"),
+                rs.getString("source_format"),
+                rs.getString("target_format"),
+                rs.getBoolean("success"),
+                fromEpochMillis(timestamp),
+                getNullableLong(rs, "duration_ms"),
+                getNullableLong(rs, "input_bytes"),
+                getNullableLong(rs, "output_bytes"),
+                rs.getString("error_message")
+        );
+        record.setTimestampMillis(timestamp);
+        return record;
+    }
+
+    /**
+     * THis clears asll the records from the conversion_history table. The daily rollups hold the totals for the whole
+     * history, so they are wiped too, and with them every statistic.
      */
     public void clearAllRecords() {
         String sql = "DELETE FROM conversion_history";
         String resetSql = "DELETE FROM sqlite_sequence WHERE name='conversion_history'";
-        try (Connection conn = DatabaseManager.connect();
-             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql);
-            stmt.executeUpdate(resetSql); // THis resets thee auto-increment sequence
+        DatabaseEvent event = DatabaseEvent.start("clearAll");
+        int rows = 0;
+        boolean success = false;
+        try {
+            rows = connectionManager.writeInTransaction(connection -> {
+                try (Statement stmt = connection.createStatement()) {
+                    int deleted = stmt.executeUpdate(sql);
+                    stmt.executeUpdate(resetSql); // THis resets thee auto-increment sequence
+                    stmt.executeUpdate("DELETE FROM history_daily_rollup"); // All the statistics go with them
+                    return deleted;
+                }
+            });
+            success = true;
         } catch (SQLException e) {
             System.err.println("Error clearing records: " + e.getMessage());
+        } finally {
+            event.complete(rows, success);
         }
     }
 }
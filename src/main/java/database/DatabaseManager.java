@@ -1,7 +1,7 @@
 package database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -14,28 +14,97 @@ public class DatabaseManager {
 
     private static final String DB_URL = "jdbc:sqlite:conversion_history.db";
 
+    private static final int INCREMENTAL_AUTO_VACUUM = 2;
+
+    private static ConnectionManager connectionManager;
+
     /**
-     * TThis establishes a connection to my SQLite database.
+     * This gives the shared connection manager, creating it the first time it is needed.
+     * Every DAO should go through this rather than opening its own connections.
+     * @return The connection manager for my database.
+     */
+    public static synchronized ConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            connectionManager = new ConnectionManager(DB_URL);
+        }
+        return connectionManager;
+    }
+
+    /**
+     * TThis establishes a separate connection to my SQLite database, configured the same way as the shared ones.
+     * The caller owns it and must close it; normal database access should use getConnectionManager() instead.
      * @return The connection object to the database.
      * @throws SQLException If a database access error occurs.
      */
     public static Connection connect() throws SQLException {
-        return DriverManager.getConnection(DB_URL);
+        return getConnectionManager().openConnection(false);
     }
 
     /**
-     * This initialises my database schema by creating the conversion_history table if it doesn't already exist.
+     * This initialises my database schema, creating the conversion_history table on a new database and migrating
+     * an older one up to the current schema version (see SchemaMigrations).
      * This ensures my database is ready to store conversion records.
      */
     public static void initialize() {
-        try (Connection conn = connect();
-            Statement stmt = conn.createStatement()) {
-
-            String sql = "CREATE TABLE IF NOT EXISTS conversion_history (\n" + "id INTEGER PRIMARY KEY AUTOINCREMENT,\n" + "source_path TEXT NOT NULL,\n" + "target_path TEXT NOT NULL,\n" + "source_format TEXT NOT NULL,\n" + "target_format TEXT NOT NULL,\n" + "success BOOLEAN NOT NULL,\n" + "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP\n" +");";
-            stmt.execute(sql);
+        try {
+            useIncrementalVacuum(getConnectionManager(), false);
+            int previousVersion = SchemaMigrations.migrate(getConnectionManager());
+            if (previousVersion < SchemaMigrations.latestVersion()) {
+                System.out.println("Database schema migrated from version " + previousVersion + " to " + SchemaMigrations.latestVersion() + ".");
+            }
             System.out.println("SUCCESS!!! Database initialised successfully.");
         } catch (SQLException e) {
             System.err.println("ANOTHER ERROR!!! Error initialising database: " + e.getMessage());
         }
     }
+
+    /**
+     * HistoryRetention gives space back with PRAGMA incremental_vacuum, which only works in auto_vacuum=INCREMENTAL
+     * mode. A new database can just be switched; an existing one needs a full VACUUM once to take on the mode.
+     * That VACUUM rewrites the whole file, which takes a while on a big history, so startup only switches new
+     * databases and HistoryRetention converts an existing one on its own thread, the first time it frees space.
+     * @param convertExisting Whether to VACUUM an existing database into the mode.
+     */
+    static void useIncrementalVacuum(ConnectionManager manager, boolean convertExisting) throws SQLException {
+        manager.write(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                int mode;
+                try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                    mode = rs.next() ? rs.getInt(1) : 0;
+                }
+                if (mode != INCREMENTAL_AUTO_VACUUM) {
+                    stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                    boolean hasTables;
+                    try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master LIMIT 1")) {
+                        hasTables = rs.next();
+                    }
+                    if (hasTables && convertExisting) {
+                        stmt.execute("VACUUM");
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * This closes all of my database connections. It is called when the app exits.
+     */
+    public static synchronized void shutdown() {
+        if (connectionManager != null) {
+            try {
+                // Lets SQLite refresh the statistics its query planner uses to pick between my indexes
+                connectionManager.write(connection -> {
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("PRAGMA optimize");
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                System.err.println("Error optimising database: " + e.getMessage());
+            }
+            connectionManager.close();
+            connectionManager = null;
+        }
+    }
 }
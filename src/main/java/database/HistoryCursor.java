@@ -0,0 +1,50 @@
+package database;
+
+import models.ConversionRecord;
+
+/**
+ * This is a keyset pagination cursor for the conversion history: the (timestamp, id) of the last row already read.
+ * The next page starts strictly after it, so reading page 1,000 costs the same as reading page 1.
+ * The timestamp is kept in epoch millis exactly as the row had it, never converted through the local time zone, so a
+ * row from the repeated hour when the clocks go back can't send the next page back an hour.
+ */
+public final class HistoryCursor {
+
+    /**
+     * The cursor for the very first page.
+     */
+    public static final HistoryCursor START = new HistoryCursor(true, 0, 0);
+
+    private final boolean start;
+    private final long epochMillis;
+    private final int id;
+
+    private HistoryCursor(boolean start, long epochMillis, int id) {
+        this.start = start;
+        this.epochMillis = epochMillis;
+        this.id = id;
+    }
+
+    /**
+     * This makes the cursor that continues after the given record.
+     * @param record The last record of the previous page, as the DAO read it.
+     * @return The cursor for the next page.
+     */
+    public static HistoryCursor after(ConversionRecord record) {
+        Long millis = record.getTimestampMillis();
+        return new HistoryCursor(false, millis != null ? millis : ConversionHistoryDAO.toEpochMillis(record.getTimestamp()),
+            record.getId());
+    }
+
+    public boolean isStart() {
+        return start;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
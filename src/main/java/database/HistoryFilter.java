@@ -0,0 +1,67 @@
+package database;
+
+import java.time.LocalDateTime;
+
+/**
+ * This describes which history records to read: by status, by time, by format and by search text.
+ * The DAO turns it into a parameterized WHERE clause, so filtering happens in SQLite against its indexes
+ * rather than in Java over every record. A null field means "don't filter on this".
+ */
+public final class HistoryFilter {
+
+    /**
+     * The filter that lets everything through.
+     */
+    public static final HistoryFilter ALL = new HistoryFilter(null, null, null, null, null);
+
+    private final Boolean success;
+    private final LocalDateTime since;
+    private final LocalDateTime until;
+    private final String format;
+    private final String searchText;
+
+    /**
+     * @param success true for only successful conversions, false for only failed ones, null for both.
+     * @param since Only records at or after this time, or null for all time.
+     * @param format Only records whose source or target format is this, or null for all formats.
+     * @param searchText Only records with this text somewhere in their paths or formats (ignoring case), or null.
+     */
+    public HistoryFilter(Boolean success, LocalDateTime since, String format, String searchText) {
+        this(success, since, null, format, searchText);
+    }
+
+    /**
+     * @param success true for only successful conversions, false for only failed ones, null for both.
+     * @param since Only records at or after this time, or null for no start.
+     * @param until Only records before this time, or null for no end.
+     * @param format Only records whose source or target format is this, or null for all formats.
+     * @param searchText Only records with this text somewhere in their paths or formats (ignoring case), or null.
+     */
+    public HistoryFilter(Boolean success, LocalDateTime since, LocalDateTime until, String format, String searchText) {
+        this.success = success;
+        this.since = since;
+        this.until = until;
+        this.format = format;
+        this.searchText = searchText == null || searchText.trim().isEmpty() ? null : searchText.trim();
+    }
+
+    public Boolean getSuccess() {
+        return success;
+    }
+
+    public LocalDateTime getSince() {
+        return since;
+    }
+
+    public LocalDateTime getUntil() {
+        return until;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getSearchText() {
+        return searchText;
+    }
+}
@@ -0,0 +1,189 @@
+package database;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import models.ConversionRecord;
+import models.HistoryColumns;
+import models.HistoryRow;
+
+/**
+ * This filters a history that is small enough to keep entirely in memory, without going back to SQLite for every
+ * change of filter. The records are kept as HistoryColumns, so a check is a few array reads: the format filter
+ * compares int codes, the time filter compares epoch millis, and the search text is matched against each distinct
+ * format and folder once per filter rather than once per record. Only the file names are searched row by row, in
+ * place and ignoring case as they go, so nothing is lowercased or allocated per record.
+ * It applies the same rules as the WHERE clause ConversionHistoryDAO builds from a HistoryFilter.
+ */
+public class HistoryFilterEngine {
+
+    // Below this many records a parallel stream costs more to set up than it saves
+    private static final int PARALLEL_THRESHOLD = 5_000;
+
+    private volatile HistoryColumns history = new HistoryColumns();
+
+    /**
+     * This replaces the records being filtered.
+     * @param records The records, in the order the filtered results should keep.
+     */
+    public void load(HistoryColumns records) {
+        history = records;
+    }
+
+    /**
+     * This adds newly saved records after the ones already loaded. Filters already running keep the records
+     * they started with.
+     * @param records The new records, newest last.
+     */
+    public void append(List<ConversionRecord> records) {
+        history.appendAll(records);
+    }
+
+    /**
+     * @return The number of records being filtered.
+     */
+    public int size() {
+        return history.size();
+    }
+
+    /**
+     * @return The highest record id loaded so far, or 0 if there are none.
+     */
+    public int getMaxId() {
+        return history.getMaxId();
+    }
+
+    /**
+     * This returns the records that pass the filter, in their original order.
+     * Big histories are checked in parallel. The run gives up as soon as cancelled says so, which is how a run
+     * for filters the user has already changed again stops wasting time.
+     * @param filter Which records to keep.
+     * @param cancelled Checked while filtering; once it returns true the run stops.
+     * @return The matching rows, or null if the run was cancelled.
+     */
+    public List<HistoryRow> filter(HistoryFilter filter, BooleanSupplier cancelled) {
+        HistoryColumns snapshot = history;
+        int rows = snapshot.size();
+        Query query = new Query(filter, snapshot);
+        IntStream stream = rows >= PARALLEL_THRESHOLD ? IntStream.range(0, rows).parallel() : IntStream.range(0, rows);
+        List<HistoryRow> matches = stream
+                .filter(row -> !cancelled.getAsBoolean() && query.matches(row))
+                .mapToObj(snapshot::row)
+                .collect(Collectors.toList());
+        return cancelled.getAsBoolean() ? null : matches;
+    }
+
+    /**
+     * This checks the rows from fromRow on, for records that were just appended.
+     * @param fromRow The first row to check, e.g. size() from before the last append.
+     * @param filter Which rows to keep.
+     * @return The rows that pass, in their original order.
+     */
+    public List<HistoryRow> matching(int fromRow, HistoryFilter filter) {
+        return matching(history, fromRow, filter);
+    }
+
+    /**
+     * This checks rows that were just appended to some columns, for records that arrive while the history is being
+     * read from SQLite a page at a time.
+     * @param columns The columns the rows are in.
+     * @param fromRow The first row to check; every row after it is checked too.
+     * @param filter Which rows to keep.
+     * @return The rows that pass, in their original order.
+     */
+    public static List<HistoryRow> matching(HistoryColumns columns, int fromRow, HistoryFilter filter) {
+        int rows = columns.size();
+        Query query = new Query(filter, columns);
+        List<HistoryRow> matches = new ArrayList<>();
+        for (int row = fromRow; row < rows; row++) {
+            if (query.matches(row)) {
+                matches.add(columns.row(row));
+            }
+        }
+        return matches;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * A HistoryFilter worked out against one HistoryColumns: the format as its code, the times as epoch millis, and
+     * for the search text, which formats and folders already contain it.
+     */
+    private static final class Query {
+        // No row has this format code, so a format nobody used matches nothing
+        private static final int NO_FORMAT = -2;
+
+        final HistoryColumns columns;
+        final Boolean success;
+        final long sinceMillis;
+        final long untilMillis;
+        final int formatCode;
+        final String searchText;
+        final boolean[] formatContains;
+        final boolean[] directoryContains;
+
+        Query(HistoryFilter filter, HistoryColumns columns) {
+            this.columns = columns;
+            this.success = filter.getSuccess();
+            this.sinceMillis = filter.getSince() == null ? Long.MIN_VALUE : toEpochMillis(filter.getSince());
+            this.untilMillis = filter.getUntil() == null ? Long.MAX_VALUE : toEpochMillis(filter.getUntil());
+            if (filter.getFormat() == null) {
+                this.formatCode = -1;
+            } else {
+                int code = columns.getFormatCode(filter.getFormat());
+                this.formatCode = code < 0 ? NO_FORMAT : code;
+            }
+            this.searchText = filter.getSearchText() == null ? null : filter.getSearchText().toLowerCase(Locale.ROOT);
+            if (searchText == null) {
+                formatContains = null;
+                directoryContains = null;
+            } else {
+                formatContains = new boolean[columns.getFormatCount()];
+                for (int code = 0; code < formatContains.length; code++) {
+                    formatContains[code] = columns.getFormat(code).toLowerCase(Locale.ROOT).contains(searchText);
+                }
+                directoryContains = new boolean[columns.getDirectoryCount()];
+                for (int code = 0; code < directoryContains.length; code++) {
+                    directoryContains[code] = columns.getDirectory(code).toLowerCase(Locale.ROOT).contains(searchText);
+                }
+            }
+        }
+
+        boolean matches(int row) {
+            if (success != null && columns.isSuccess(row) != success) {
+                return false;
+            }
+            long millis = columns.getEpochMillis(row);
+            if (millis < sinceMillis || millis >= untilMillis) {
+                return false;
+            }
+            int sourceFormat = columns.getSourceFormatCode(row);
+            int targetFormat = columns.getTargetFormatCode(row);
+            if (formatCode != -1 && formatCode != sourceFormat && formatCode != targetFormat) {
+                return false;
+            }
+            if (searchText == null) {
+                return true;
+            }
+            return formatMatches(sourceFormat) || formatMatches(targetFormat)
+                    || columns.sourcePathContains(row, searchText, directoryMatches(columns.getSourceDirectoryCode(row)))
+                    || columns.targetPathContains(row, searchText, directoryMatches(columns.getTargetDirectoryCode(row)));
+        }
+
+        private boolean formatMatches(int code) {
+            return code >= 0 && formatContains[code];
+        }
+
+        private boolean directoryMatches(int code) {
+            return code >= 0 && directoryContains[code];
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import models.ConversionRecord;
+
+/**
+ * This is my write-behind recorder for the conversion history.
+ * record() just queues the record and returns straight away, so it is safe to call from the JavaFX thread.
+ * A background thread writes the queue out in batches, one transaction per batch, either when a batch fills up
+ * or when the oldest queued record has waited FLUSH_INTERVAL_MS. A 10,000 file batch is therefore a handful of
+ * transactions instead of 10,000 separate commits.
+ * A batch that fails is tried again a couple of times, then record by record, so one bad record or a moment of
+ * lock contention doesn't lose the rest; only records that still can't be saved are dropped, and that is logged.
+ * Every committed record is published on the ConversionEventBus, which is how open History windows stay up to date.
+ */
+public class HistoryRecorder {
+
+    private static final int BATCH_SIZE = 500;
+    private static final long FLUSH_INTERVAL_MS = 250;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final int WRITE_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 200;
+
+    private static HistoryRecorder instance;
+
+    private final ConversionHistoryDAO historyDAO;
+    private final LinkedBlockingQueue<ConversionRecord> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private final Object progressLock = new Object();
+    private long enqueuedCount;
+    // Records written or given up on; flush waits on this
+    private long processedCount;
+    private volatile boolean running = true;
+
+    HistoryRecorder(ConversionHistoryDAO historyDAO) {
+        this.historyDAO = historyDAO;
+        this.writerThread = new Thread(this::writeLoop, "history-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public static synchronized HistoryRecorder getInstance() {
+        if (instance == null) {
+            instance = new HistoryRecorder(new ConversionHistoryDAO());
+        }
+        return instance;
+    }
+
+    /**
+     * This queues a record to be written. It never blocks.
+     * If the recorder has already been shut down the record is written straight away instead of being lost.
+     * @param record The record to save.
+     */
+    public void record(ConversionRecord record) {
+        if (!running) {
+            historyDAO.insertRecord(record);
+            return;
+        }
+        synchronized (progressLock) {
+            enqueuedCount++;
+        }
+        queue.add(record);
+    }
+
+    /**
+     * This waits until everything queued before the call has been written to the database (or, if it couldn't be,
+     * dropped and logged).
+     * Use it before reading the history when the latest records have to be there.
+     */
+    public void flush() {
+        synchronized (progressLock) {
+            long target = enqueuedCount;
+            while (processedCount < target && writerThread.isAlive()) {
+                try {
+                    progressLock.wait(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * This stops the background writer after it has written everything still in the queue.
+     * It is called when the app exits.
+     */
+    public void shutdown() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything the writer didn't get to (or that raced with shutdown) still gets saved
+        List<ConversionRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining);
+        }
+    }
+
+    private void writeLoop() {
+        List<ConversionRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                ConversionRecord first = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+                while (batch.size() < BATCH_SIZE && running) {
+                    queue.drainTo(batch, BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= BATCH_SIZE || remaining <= 0) {
+                        break;
+                    }
+                    ConversionRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown wakes us up, the loop condition decides whether there is anything left to do
+            }
+            queue.drainTo(batch, BATCH_SIZE - batch.size());
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<ConversionRecord> batch) {
+        // A failed batch is rolled back as a whole, so it is either all in or not at all
+        int inserted = historyDAO.insertRecords(batch);
+        for (int attempt = 2; inserted == 0 && attempt <= WRITE_ATTEMPTS; attempt++) {
+            pauseBeforeRetry(attempt);
+            inserted = historyDAO.insertRecords(batch);
+        }
+        List<ConversionRecord> committed = batch;
+        if (inserted == 0) {
+            // Most likely one record the database won't take; save the others one at a time
+            committed = new ArrayList<>(batch.size());
+            for (ConversionRecord record : batch) {
+                if (historyDAO.insertRecords(List.of(record)) == 1) {
+                    committed.add(record);
+                }
+            }
+            int dropped = batch.size() - committed.size();
+            if (dropped > 0) {
+                System.err.println("History writer dropped " + dropped + " of " + batch.size()
+                        + " records that could not be saved after " + WRITE_ATTEMPTS + " attempts");
+            }
+        }
+        synchronized (progressLock) {
+            processedCount += batch.size();
+            progressLock.notifyAll();
+        }
+        ConversionEventBus.getInstance().publish(committed);
+    }
+
+    private static void pauseBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_DELAY_MS * (attempt - 1));
+        } catch (InterruptedException e) {
+            // Shutting down: retry straight away, and leave the interrupt for the write loop to see
+            Thread.currentThread().interrupt();
+        }
+    }
+}
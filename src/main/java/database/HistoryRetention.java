@@ -0,0 +1,168 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import diagnostics.DatabaseEvent;
+import utils.SettingsManager;
+
+/**
+ * This is my retention policy for the conversion history.
+ * Raw records older than the retention period (historyRetentionDays in the settings, 0 keeps everything) are deleted.
+ * Nothing is lost from the statistics: every record was already counted in history_daily_rollup, one row per day and
+ * format pair, by the insert trigger when it was saved. The work is done in small batches,
+ * each its own short transaction with a pause in between, so the history writer never waits long for the database.
+ * The freed pages are handed back to the file system with incremental vacuum, a bounded number at a time.
+ * It runs on a background thread shortly after startup and then once a day.
+ */
+public class HistoryRetention {
+
+    private static final int BATCH_SIZE = 2_000;
+    private static final long PAUSE_BETWEEN_BATCHES_MS = 50;
+    private static final int VACUUM_PAGES_PER_STEP = 1_024;
+    private static final long INITIAL_DELAY_MINUTES = 1;
+    private static final long RUN_INTERVAL_HOURS = 24;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5_000;
+
+    private static final String DELETE_BATCH_SQL = "DELETE FROM conversion_history WHERE id IN (SELECT id FROM conversion_history WHERE timestamp < ? ORDER BY timestamp, id LIMIT ?)";
+
+    private static HistoryRetention instance;
+
+    private final ConnectionManager connectionManager;
+    private ScheduledExecutorService scheduler;
+
+    HistoryRetention(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    public static synchronized HistoryRetention getInstance() {
+        if (instance == null) {
+            instance = new HistoryRetention(DatabaseManager.getConnectionManager());
+        }
+        return instance;
+    }
+
+    /**
+     * This schedules the retention run on a background daemon thread.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> applyRetention(SettingsManager.getInstance().getHistoryRetentionDays()),
+                INITIAL_DELAY_MINUTES, TimeUnit.HOURS.toMinutes(RUN_INTERVAL_HOURS), TimeUnit.MINUTES);
+    }
+
+    /**
+     * This stops the scheduled runs. A batch that is already running finishes, the rest of the run is skipped.
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                // Let a batch that is mid-transaction commit before the connections are closed
+                scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+    }
+
+    /**
+     * This deletes every raw record older than retentionDays, then reclaims the space.
+     * @param retentionDays How many days of raw records to keep; 0 or less keeps everything.
+     * @return The number of records deleted.
+     */
+    public int applyRetention(int retentionDays) {
+        if (retentionDays <= 0) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        long cutoffMillis = ConversionHistoryDAO.toEpochMillis(cutoff);
+        int total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = deleteBatch(cutoffMillis);
+                total += deleted;
+                Thread.sleep(PAUSE_BETWEEN_BATCHES_MS);
+            } while (deleted == BATCH_SIZE);
+            if (total > 0) {
+                // A database from before incremental vacuum is converted here, off the FX thread, once
+                DatabaseManager.useIncrementalVacuum(connectionManager, true);
+                reclaimFreePages();
+                System.out.println("History retention removed " + total + " records older than " + retentionDays + " days; their totals stay in the daily rollups.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            System.err.println("Error applying history retention: " + e.getMessage());
+        }
+        return total;
+    }
+
+    private int deleteBatch(long cutoffMillis) throws SQLException {
+        DatabaseEvent event = DatabaseEvent.start("retentionBatch");
+        int rows = 0;
+        boolean success = false;
+        try {
+            rows = connectionManager.write(connection -> {
+                PreparedStatement delete = connection.prepare(DELETE_BATCH_SQL);
+                delete.setLong(1, cutoffMillis);
+                delete.setInt(2, BATCH_SIZE);
+                return delete.executeUpdate();
+            });
+            success = true;
+        } finally {
+            event.complete(rows, success);
+        }
+        return rows;
+    }
+
+    /**
+     * Incremental vacuum moves free pages to the end of the file and truncates it, a bounded number of pages per
+     * transaction, so the file shrinks without the long exclusive lock a full VACUUM would take.
+     * Each step of the pragma frees one page, and the driver's execute() only takes the first step, so it is run with
+     * executeUpdate, which steps it through all of its pages.
+     */
+    private void reclaimFreePages() throws SQLException, InterruptedException {
+        long remaining = freePageCount();
+        while (remaining > 0) {
+            long pages = Math.min(remaining, VACUUM_PAGES_PER_STEP);
+            connectionManager.writeInTransaction(connection -> {
+                // A plain statement, closed before the commit; a half-stepped cached one would block the commit
+                try (Statement vacuum = connection.createStatement()) {
+                    vacuum.executeUpdate("PRAGMA incremental_vacuum(" + pages + ")");
+                }
+                return null;
+            });
+            long left = freePageCount();
+            if (left >= remaining) {
+                break;
+            }
+            remaining = left;
+            Thread.sleep(PAUSE_BETWEEN_BATCHES_MS);
+        }
+    }
+
+    private long freePageCount() throws SQLException {
+        return connectionManager.write(connection -> {
+            try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA freelist_count")) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+}
@@ -0,0 +1,14 @@
+package database;
+
+import java.io.IOException;
+
+import models.ConversionRecord;
+
+/**
+ * This receives records one at a time as ConversionHistoryDAO.streamRecords reads them, so a caller can write them
+ * out without ever holding the whole history in memory.
+ */
+@FunctionalInterface
+public interface RecordSink {
+    void accept(ConversionRecord record) throws IOException;
+}
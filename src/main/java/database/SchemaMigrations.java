@@ -0,0 +1,131 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * These are my schema migrations. The version a database is at lives in PRAGMA user_version, and every migration
+ * past it is applied in order, all of them in one transaction, so a database is either fully upgraded or left
+ * exactly as it was. To change the schema, add a migration to the end of MIGRATIONS; never edit one that has shipped.
+ */
+final class SchemaMigrations {
+
+    private interface Migration {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    // Version N is reached by applying MIGRATIONS.get(N - 1)
+    private static final List<Migration> MIGRATIONS = List.of(
+            SchemaMigrations::createHistoryTable,
+            SchemaMigrations::useEpochMillisAndConversionDetails,
+            SchemaMigrations::createDailyRollups,
+            SchemaMigrations::maintainRollupsOnInsert
+    );
+
+    private static final String ROLLUP_CONFLICT_CLAUSE = "ON CONFLICT(day, source_format, target_format) DO UPDATE SET " + "conversions = conversions + excluded.conversions, failures = failures + excluded.failures, " + "input_bytes = input_bytes + excluded.input_bytes, output_bytes = output_bytes + excluded.output_bytes, " + "duration_ms = duration_ms + excluded.duration_ms";
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * @return The schema version this build of the app expects.
+     */
+    static int latestVersion() {
+        return MIGRATIONS.size();
+    }
+
+    /**
+     * This brings the database up to the latest version.
+     * @return The version the database was at before migrating.
+     */
+    static int migrate(ConnectionManager connectionManager) throws SQLException {
+        return connectionManager.writeInTransaction(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                int version;
+                try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                    version = rs.next() ? rs.getInt(1) : 0;
+                }
+                if (version > latestVersion()) {
+                    throw new SQLException("Database schema version " + version + " is newer than this version of FileX supports (" + latestVersion() + ")");
+                }
+                for (int next = version; next < latestVersion(); next++) {
+                    MIGRATIONS.get(next).apply(stmt);
+                }
+                if (version < latestVersion()) {
+                    stmt.execute("PRAGMA user_version = " + latestVersion());
+                }
+                return version;
+            }
+        });
+    }
+
+    /**
+     * Version 1 is the original table, as every database made before migrations existed already has it.
+     */
+    private static void createHistoryTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS conversion_history (\n" + "id INTEGER PRIMARY KEY AUTOINCREMENT,\n" + "source_path TEXT NOT NULL,\n" + "target_path TEXT NOT NULL,\n" + "source_format TEXT NOT NULL,\n" + "target_format TEXT NOT NULL,\n" + "success BOOLEAN NOT NULL,\n" + "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP\n" + ");");
+    }
+
+    /**
+     * Version 2 stores timestamps as INTEGER epoch milliseconds and records how long each conversion took, how big
+     * the files were and why a failed one failed.
+     * SQLite can't change a column's type, so the table is rebuilt and the rows copied over. Old timestamps may be
+     * integers (what the JDBC driver wrote) or text (the CURRENT_TIMESTAMP default, which is UTC); both become millis.
+     * Indexes, the search index and its triggers belong to the old table, so they are dropped first and made again.
+     */
+    private static void useEpochMillisAndConversionDetails(Statement stmt) throws SQLException {
+        stmt.execute("DROP TRIGGER IF EXISTS conversion_history_fts_insert");
+        stmt.execute("DROP TRIGGER IF EXISTS conversion_history_fts_delete");
+        stmt.execute("DROP TRIGGER IF EXISTS conversion_history_fts_update");
+        stmt.execute("DROP TABLE IF EXISTS conversion_history_fts");
+
+        stmt.execute("CREATE TABLE conversion_history_v2 (\n" + "id INTEGER PRIMARY KEY AUTOINCREMENT,\n" + "source_path TEXT NOT NULL,\n" + "target_path TEXT NOT NULL,\n" + "source_format TEXT NOT NULL,\n" + "target_format TEXT NOT NULL,\n" + "success BOOLEAN NOT NULL,\n" + "timestamp INTEGER NOT NULL DEFAULT (CAST(strftime('%s', 'now') AS INTEGER) * 1000),\n" + "duration_ms INTEGER,\n" + "input_bytes INTEGER,\n" + "output_bytes INTEGER,\n" + "error_message TEXT\n" + ");");
+        stmt.execute("INSERT INTO conversion_history_v2(id, source_path, target_path, source_format, target_format, success, timestamp)\n" + "SELECT id, source_path, target_path, source_format, target_format, success,\n" + "CASE typeof(timestamp)\n" + "WHEN 'integer' THEN timestamp\n" + "WHEN 'real' THEN CAST(timestamp AS INTEGER)\n" + "WHEN 'text' THEN COALESCE(CAST(strftime('%s', timestamp) AS INTEGER) * 1000, 0)\n" + "ELSE 0 END\n" + "FROM conversion_history");
+        stmt.execute("DROP TABLE conversion_history");
+        stmt.execute("ALTER TABLE conversion_history_v2 RENAME TO conversion_history");
+
+        // The History window pages through the table in (timestamp, id) order, optionally filtered by status or
+        // format, so each filter column gets an index that keeps that order
+        stmt.execute("CREATE INDEX idx_history_timestamp ON conversion_history(timestamp, id)");
+        stmt.execute("CREATE INDEX idx_history_success ON conversion_history(success, timestamp, id)");
+        stmt.execute("CREATE INDEX idx_history_source_format ON conversion_history(source_format, timestamp, id)");
+        stmt.execute("CREATE INDEX idx_history_target_format ON conversion_history(target_format, timestamp, id)");
+        createSearchIndex(stmt);
+    }
+
+    /**
+     * Version 3 adds the daily rollups that history older than the retention period is folded into: one row per
+     * local day and format pair, with the counts, failures, bytes and time of every conversion in it.
+     */
+    private static void createDailyRollups(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE history_daily_rollup (\n" + "day TEXT NOT NULL,\n" + "source_format TEXT NOT NULL,\n" + "target_format TEXT NOT NULL,\n" + "conversions INTEGER NOT NULL,\n" + "failures INTEGER NOT NULL,\n" + "input_bytes INTEGER NOT NULL,\n" + "output_bytes INTEGER NOT NULL,\n" + "duration_ms INTEGER NOT NULL,\n" + "PRIMARY KEY (day, source_format, target_format)\n" + ") WITHOUT ROWID");
+    }
+
+    /**
+     * Version 4 makes the daily rollups cover the whole history instead of only what retention has removed, so the
+     * statistics can be answered from them alone. The raw records still in the table are added once, and from then
+     * on a trigger adds every new record to its bucket inside the same transaction that inserts it.
+     */
+    private static void maintainRollupsOnInsert(Statement stmt) throws SQLException {
+        // WHERE true keeps SQLite from reading the ON CONFLICT as part of the SELECT's join
+        stmt.execute("INSERT INTO history_daily_rollup(day, source_format, target_format, conversions, failures, input_bytes, output_bytes, duration_ms)\n" + "SELECT date(timestamp / 1000, 'unixepoch', 'localtime'), source_format, target_format, COUNT(*), SUM(NOT success), " + "TOTAL(input_bytes), TOTAL(output_bytes), TOTAL(duration_ms)\n" + "FROM conversion_history WHERE true GROUP BY 1, 2, 3\n" + ROLLUP_CONFLICT_CLAUSE);
+        stmt.execute("CREATE TRIGGER history_daily_rollup_insert AFTER INSERT ON conversion_history BEGIN\n" + "INSERT INTO history_daily_rollup(day, source_format, target_format, conversions, failures, input_bytes, output_bytes, duration_ms) " + "VALUES (date(new.timestamp / 1000, 'unixepoch', 'localtime'), new.source_format, new.target_format, 1, NOT new.success, " + "COALESCE(new.input_bytes, 0), COALESCE(new.output_bytes, 0), COALESCE(new.duration_ms, 0))\n" + ROLLUP_CONFLICT_CLAUSE + ";\n" + "END");
+    }
+
+    /**
+     * This creates the full-text index used by the History search box.
+     * It is an FTS5 table over the paths and formats with the trigram tokenizer, so any substring of 3 or more
+     * characters is an index lookup instead of a LIKE scan. It stores no text of its own (content=conversion_history)
+     * and triggers keep it in step with every insert, update and delete.
+     */
+    private static void createSearchIndex(Statement stmt) throws SQLException {
+        stmt.execute("CREATE VIRTUAL TABLE conversion_history_fts USING fts5(" + "source_path, target_path, source_format, target_format, " + "content='conversion_history', content_rowid='id', tokenize='trigram')");
+        stmt.execute("CREATE TRIGGER conversion_history_fts_insert AFTER INSERT ON conversion_history BEGIN\n" + "INSERT INTO conversion_history_fts(rowid, source_path, target_path, source_format, target_format) " + "VALUES (new.id, new.source_path, new.target_path, new.source_format, new.target_format);\n" + "END");
+        stmt.execute("CREATE TRIGGER conversion_history_fts_delete AFTER DELETE ON conversion_history BEGIN\n" + "INSERT INTO conversion_history_fts(conversion_history_fts, rowid, source_path, target_path, source_format, target_format) " + "VALUES ('delete', old.id, old.source_path, old.target_path, old.source_format, old.target_format);\n" + "END");
+        stmt.execute("CREATE TRIGGER conversion_history_fts_update AFTER UPDATE OF source_path, target_path, source_format, target_format ON conversion_history BEGIN\n" + "INSERT INTO conversion_history_fts(conversion_history_fts, rowid, source_path, target_path, source_format, target_format) " + "VALUES ('delete', old.id, old.source_path, old.target_path, old.source_format, old.target_format);\n" + "INSERT INTO conversion_history_fts(rowid, source_path, target_path, source_format, target_format) " + "VALUES (new.id, new.source_path, new.target_path, new.source_format, new.target_format);\n" + "END");
+        // Index whatever history was copied over
+        stmt.execute("INSERT INTO conversion_history_fts(conversion_history_fts) VALUES ('rebuild')");
+    }
+}
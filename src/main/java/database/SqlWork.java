@@ -0,0 +1,12 @@
+package database;
+
+import java.sql.SQLException;
+
+/**
+ * This is a piece of database work that runs on a connection borrowed from the ConnectionManager.
+ * @param <T> What the work returns.
+ */
+@FunctionalInterface
+public interface SqlWork<T> {
+    T execute(PooledConnection connection) throws SQLException;
+}
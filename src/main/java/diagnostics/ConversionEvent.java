@@ -0,0 +1,44 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the JFR event for a single call to FileConversionHandler.convertFile.
+ * It covers the whole conversion, and the FormatConversionEvent it wraps shows which converter did the work.
+ */
+@Name("filex.Conversion")
+@Label("File Conversion")
+@Category({"FileX", "Conversion"})
+@Description("A file conversion, from dispatch to completion")
+@StackTrace(false)
+public class ConversionEvent extends jdk.jfr.Event {
+
+    @Label("Source Path")
+    public String sourcePath;
+
+    @Label("Source Format")
+    public String sourceFormat;
+
+    @Label("Target Format")
+    public String targetFormat;
+
+    @Label("Input Size")
+    @DataAmount
+    public long inputBytes;
+
+    @Label("Output Size")
+    @DataAmount
+    public long outputBytes;
+
+    @Label("Outcome")
+    @Description("SUCCESS, UNSUPPORTED or FAILED")
+    public String outcome;
+
+    @Label("Error Message")
+    public String errorMessage;
+}
@@ -0,0 +1,54 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the JFR event for the conversion history database operations in ConversionHistoryDAO.
+ */
+@Name("filex.Database")
+@Label("History Database Operation")
+@Category({"FileX", "Database"})
+@Description("A read or write against the conversion_history table")
+@StackTrace(false)
+public class DatabaseEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Rows")
+    @Description("Rows inserted, returned or deleted")
+    public long rows;
+
+    @Label("Success")
+    public boolean success;
+
+    /**
+     * This starts timing a database operation.
+     * @param operation A short name for the operation, e.g. "insert".
+     * @return The started event, to be finished with complete().
+     */
+    public static DatabaseEvent start(String operation) {
+        DatabaseEvent event = new DatabaseEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * This ends the event and commits it if a recording wants it.
+     * @param rows How many rows the operation touched.
+     * @param success Whether the operation finished without an SQLException.
+     */
+    public void complete(long rows, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            this.success = success;
+            commit();
+        }
+    }
+}
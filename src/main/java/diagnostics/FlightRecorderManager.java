@@ -0,0 +1,96 @@
+package diagnostics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * This manages my continuous JDK Flight Recorder recording.
+ * When it is switched on (in the settings or with the --jfr flag) it keeps a bounded ring buffer of recent events,
+ * including my own FileX events, and writes it to disk when the app exits.
+ * The result can then be read with "jfr print --events filex.Conversion filex-recording.jfr".
+ */
+public class FlightRecorderManager {
+
+    public static final String RECORDING_NAME = "FileX";
+    public static final String DEFAULT_DESTINATION = "filex-recording.jfr";
+
+    private static Recording recording;
+
+    /**
+     * This starts the continuous recording if it isn't already running.
+     * @param destination Where the recording gets dumped on exit.
+     * @param maxSizeMb The ring buffer size; older data is thrown away once this is reached.
+     * @param maxAge How much history to keep, regardless of size.
+     * @return true if the recording is running after this call, false if JFR isn't available.
+     */
+    public static synchronized boolean start(Path destination, long maxSizeMb, Duration maxAge) {
+        if (recording != null) {
+            return true;
+        }
+        if (!FlightRecorder.isAvailable()) {
+            System.err.println("Flight Recorder is not available in this JVM, recording not started.");
+            return false;
+        }
+        try {
+            Recording newRecording = new Recording(Configuration.getConfiguration("default"));
+            newRecording.setName(RECORDING_NAME);
+            newRecording.setToDisk(true);
+            newRecording.setMaxSize(maxSizeMb * 1024 * 1024);
+            newRecording.setMaxAge(maxAge);
+            newRecording.setDestination(destination);
+            newRecording.setDumpOnExit(true);
+
+            // My own events have no threshold, every conversion gets recorded
+            newRecording.enable(ConversionEvent.class).withThreshold(Duration.ZERO);
+            newRecording.enable(FormatConversionEvent.class).withThreshold(Duration.ZERO);
+            newRecording.enable(ZipEvent.class).withThreshold(Duration.ZERO);
+            newRecording.enable(UnzipEvent.class).withThreshold(Duration.ZERO);
+            newRecording.enable(TarEvent.class).withThreshold(Duration.ZERO);
+            newRecording.enable(DatabaseEvent.class).withThreshold(Duration.ZERO);
+
+            newRecording.start();
+            recording = newRecording;
+            System.out.println("Flight recording started, it will be written to " + destination.toAbsolutePath());
+            return true;
+        } catch (IOException | ParseException e) {
+            System.err.println("Error starting flight recording: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * This writes the current contents of the ring buffer to a file without stopping the recording.
+     * @param target The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public static synchronized void dump(Path target) throws IOException {
+        if (recording != null) {
+            recording.dump(target);
+        }
+    }
+
+    /**
+     * This stops the recording, which writes it to its destination.
+     */
+    public static synchronized void stop() {
+        if (recording != null) {
+            try {
+                recording.stop();
+            } catch (IllegalStateException e) {
+                System.err.println("Error stopping flight recording: " + e.getMessage());
+            }
+            recording.close();
+            recording = null;
+        }
+    }
+
+    public static synchronized boolean isRecording() {
+        return recording != null;
+    }
+}
@@ -0,0 +1,89 @@
+package diagnostics;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the per-format JFR event, emitted by each specific converter (DOCX to PDF, CSV to XLSX, etc.).
+ * It is a sub-event of ConversionEvent, so "jfr print" shows how long the actual converter took.
+ */
+@Name("filex.FormatConversion")
+@Label("Format Conversion")
+@Category({"FileX", "Conversion"})
+@Description("Time spent inside one specific format converter")
+@StackTrace(false)
+public class FormatConversionEvent extends jdk.jfr.Event {
+
+    @Label("Converter")
+    public String converter;
+
+    @Label("Source Format")
+    public String sourceFormat;
+
+    @Label("Target Format")
+    public String targetFormat;
+
+    @Label("Input Size")
+    @DataAmount
+    public long inputBytes;
+
+    @Label("Output Size")
+    @DataAmount
+    public long outputBytes;
+
+    @Label("Success")
+    public boolean success;
+
+    /**
+     * This starts timing a converter.
+     * @param sourceFormat The format being read, e.g. "DOCX".
+     * @param targetFormat The format being written, e.g. "PDF".
+     * @return The started event, to be finished with complete().
+     */
+    public static FormatConversionEvent start(String sourceFormat, String targetFormat) {
+        FormatConversionEvent event = new FormatConversionEvent();
+        event.sourceFormat = sourceFormat;
+        event.targetFormat = targetFormat;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * This ends the event and commits it if a recording wants it.
+     * The file sizes are only looked up when the event will actually be written, so this costs nothing when JFR is idle.
+     * @param sourceFile The file that was converted.
+     * @param targetFile The file that was written (may not exist if the converter failed).
+     * @param success Whether the converter finished without throwing.
+     */
+    public void complete(File sourceFile, File targetFile, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.converter = sourceFormat + "_TO_" + targetFormat;
+            this.inputBytes = sourceFile.length();
+            this.outputBytes = targetFile.length();
+            this.success = success;
+            commit();
+        }
+    }
+
+    /**
+     * The same, for a converter that wrote to a stream rather than a file.
+     * @param outputBytes How many bytes the converter wrote.
+     */
+    public void complete(File sourceFile, long outputBytes, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.converter = sourceFormat + "_TO_" + targetFormat;
+            this.inputBytes = sourceFile.length();
+            this.outputBytes = outputBytes;
+            this.success = success;
+            commit();
+        }
+    }
+}
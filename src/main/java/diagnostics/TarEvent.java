@@ -0,0 +1,50 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the JFR event for TarHandler.createTar.
+ */
+@Name("filex.Tar")
+@Label("Tarball Creation")
+@Category({"FileX", "Archive"})
+@Description("Creating a compressed tar archive from a folder")
+@StackTrace(false)
+public class TarEvent extends jdk.jfr.Event {
+
+    @Label("Source Folder")
+    public String sourceFolder;
+
+    @Label("Compression")
+    @Description("gzip or zstd")
+    public String compression;
+
+    @Label("Level")
+    public String level;
+
+    @Label("Input Size")
+    @DataAmount
+    public long inputBytes;
+
+    @Label("Archive Size")
+    @DataAmount
+    public long archiveBytes;
+
+    @Label("Files")
+    public int files;
+
+    @Label("Compression Threads")
+    public int threads;
+
+    @Label("Outcome")
+    @Description("SUCCESS or FAILED")
+    public String outcome;
+
+    @Label("Error Message")
+    public String errorMessage;
+}
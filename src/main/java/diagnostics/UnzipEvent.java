@@ -0,0 +1,46 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the JFR event for ZipHandler.extractZip.
+ */
+@Name("filex.Unzip")
+@Label("ZIP Extraction")
+@Category({"FileX", "Archive"})
+@Description("Extracting a ZIP archive into a folder")
+@StackTrace(false)
+public class UnzipEvent extends jdk.jfr.Event {
+
+    @Label("Archive")
+    public String archive;
+
+    @Label("Archive Size")
+    @DataAmount
+    public long archiveBytes;
+
+    @Label("Extracted Size")
+    @DataAmount
+    public long extractedBytes;
+
+    @Label("Files")
+    public int files;
+
+    @Label("Extraction Threads")
+    public int threads;
+
+    @Label("Encrypted")
+    public boolean encrypted;
+
+    @Label("Outcome")
+    @Description("SUCCESS or FAILED")
+    public String outcome;
+
+    @Label("Error Message")
+    public String errorMessage;
+}
@@ -0,0 +1,58 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the JFR event for ZipHandler.zipFolder, updateZip and convertAndZip.
+ */
+@Name("filex.Zip")
+@Label("ZIP Creation")
+@Category({"FileX", "Archive"})
+@Description("Creating a ZIP archive from a folder")
+@StackTrace(false)
+public class ZipEvent extends jdk.jfr.Event {
+
+    @Label("Source Folder")
+    public String sourceFolder;
+
+    @Label("Archive Size")
+    @DataAmount
+    public long archiveBytes;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Compression Threads")
+    public int threads;
+
+    @Label("Stored Entries")
+    @Description("Files stored without compression because they were already compressed")
+    public int storedEntries;
+
+    @Label("Copied Entries")
+    @Description("Unchanged files copied from the previous archive when updating it")
+    public int copiedEntries;
+
+    @Label("Converted Entries")
+    @Description("Files converted on their way into the archive by convert-and-pack")
+    public int convertedEntries;
+
+    @Label("Volumes")
+    @Description("How many files the archive was split into; 1 unless split volumes were asked for")
+    public int volumes;
+
+    @Label("Encrypted")
+    public boolean encrypted;
+
+    @Label("Outcome")
+    @Description("SUCCESS or FAILED")
+    public String outcome;
+
+    @Label("Error Message")
+    public String errorMessage;
+}
@@ -0,0 +1,100 @@
+package handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This walks a folder for the archive writers, handing over each folder and file with its name in the archive.
+ * Names are laid out the way zip4j's addFolder does it, under the folder's own name; a single file is handed over on
+ * its own. The tree is walked lazily, one folder at a time, so the first entries can be written while the walk is
+ * still going and nothing grows with the number of files. Files and folders the options leave out are skipped as it
+ * goes, and an excluded folder isn't walked into at all. When only some files are included, a folder is held back
+ * until a file in it turns up, so folders with nothing included don't end up in the archive empty.
+ */
+final class ArchiveTreeWalker {
+
+    /**
+     * Gets the folders and files to archive, parents before what is in them.
+     */
+    interface Visitor {
+        void directory(String name, Path dir, BasicFileAttributes attrs) throws IOException;
+
+        /**
+         * Gets regular files, and symbolic links if the walk asked for them.
+         */
+        void file(String name, Path file, BasicFileAttributes attrs) throws IOException;
+    }
+
+    private ArchiveTreeWalker() {
+    }
+
+    /**
+     * @param source The folder (or single file) to walk.
+     * @param options Which files to hand over.
+     * @param symbolicLinks Whether to hand over symbolic links too, unfollowed; otherwise they are skipped.
+     */
+    static void walk(Path source, ZipOptions options, boolean symbolicLinks, Visitor visitor) throws IOException {
+        Path base = source.toAbsolutePath().getParent();
+        Path root = source.toAbsolutePath();
+        // Folders waiting for their first included file, outermost first
+        List<Path> pendingDirs = new ArrayList<>();
+        List<BasicFileAttributes> pendingAttrs = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path relative = root.relativize(dir.toAbsolutePath());
+                if (!dir.toAbsolutePath().equals(root) && !options.includesDirectory(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (options.hasIncludes()) {
+                    pendingDirs.add(dir);
+                    pendingAttrs.add(attrs);
+                } else {
+                    visitor.directory(entryName(base, dir), dir, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path absolute = file.toAbsolutePath();
+                Path relative = absolute.equals(root) ? absolute.getFileName() : root.relativize(absolute);
+                boolean wanted = attrs.isRegularFile() || (symbolicLinks && attrs.isSymbolicLink());
+                if (wanted && options.includesFile(relative)) {
+                    for (int i = 0; i < pendingDirs.size(); i++) {
+                        visitor.directory(entryName(base, pendingDirs.get(i)), pendingDirs.get(i), pendingAttrs.get(i));
+                    }
+                    pendingDirs.clear();
+                    pendingAttrs.clear();
+                    visitor.file(entryName(base, file), file, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                // A folder still pending had nothing included in it
+                if (!pendingDirs.isEmpty()) {
+                    pendingDirs.remove(pendingDirs.size() - 1);
+                    pendingAttrs.remove(pendingAttrs.size() - 1);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String entryName(Path base, Path path) {
+        Path relative = base == null ? path.getFileName() : base.relativize(path.toAbsolutePath());
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+}
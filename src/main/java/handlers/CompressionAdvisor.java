@@ -0,0 +1,158 @@
+package handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * This decides, file by file, whether deflating is worth it when zipping.
+ * JPEGs, PNGs, videos, Office documents (which are ZIPs themselves) and other archives are already compressed, and
+ * deflating them again burns CPU for a fraction of a percent. The decision goes:
+ * 1. The extension, for the common formats that are known to be compressed or known to compress well (text, and
+ *    uncompressed media like BMP and WAV).
+ * 2. The magic bytes at the start of the file, for compressed formats with an unusual or missing extension.
+ * 3. Otherwise an entropy estimate over a sample from the start and the middle of the file: data that already uses
+ *    nearly all 8 bits of every byte won't get smaller.
+ */
+public class CompressionAdvisor {
+
+    // Byte entropy above this (out of 8 bits) means the data is already compressed or encrypted
+    private static final double STORE_ENTROPY_BITS = 7.8;
+    private static final int SAMPLE_SIZE = 8 * 1024;
+    // Deflating something this small costs nothing worth saving
+    private static final long ALWAYS_DEFLATE_BELOW = 4 * 1024;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+        "jpg", "jpeg", "png", "gif", "webp", "heic", "avif", "jp2",
+        "mp3", "aac", "m4a", "ogg", "opus", "flac", "wma",
+        "mp4", "m4v", "mov", "mkv", "webm", "avi", "wmv", "flv",
+        "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "lz4", "jar", "war", "apk",
+        "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub"
+    );
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+        "txt", "csv", "tsv", "log", "md", "json", "xml", "html", "htm", "css", "js", "ts", "java", "py", "c", "h",
+        "cpp", "sql", "yml", "yaml", "properties", "ini", "svg", "rtf", "bmp", "tif", "tiff", "wav", "doc", "xls", "ppt"
+    );
+
+    /**
+     * This picks the compression method for a file.
+     * @param file The file to be zipped.
+     * @return ParallelZipWriter.STORED or ParallelZipWriter.DEFLATED.
+     * @throws IOException If the file can't be read.
+     */
+    public int methodFor(Path file) throws IOException {
+        String extension = extensionOf(file);
+        if (COMPRESSED_EXTENSIONS.contains(extension)) {
+            return ParallelZipWriter.STORED;
+        }
+        if (COMPRESSIBLE_EXTENSIONS.contains(extension)) {
+            return ParallelZipWriter.DEFLATED;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < ALWAYS_DEFLATE_BELOW) {
+                return ParallelZipWriter.DEFLATED;
+            }
+            ByteBuffer sample = ByteBuffer.allocate(2 * SAMPLE_SIZE);
+            readAt(channel, sample, 0, SAMPLE_SIZE);
+            if (hasCompressedSignature(sample.array(), sample.position())) {
+                return ParallelZipWriter.STORED;
+            }
+            // The start is often a header that looks nothing like the rest, so the middle is sampled too
+            if (size > 2 * SAMPLE_SIZE) {
+                readAt(channel, sample, size / 2, SAMPLE_SIZE);
+            }
+            return entropyBits(sample.array(), sample.position()) > STORE_ENTROPY_BITS
+                ? ParallelZipWriter.STORED : ParallelZipWriter.DEFLATED;
+        }
+    }
+
+    /**
+     * This picks the compression method from an entry's name alone, for content that doesn't exist as a file yet,
+     * like a converter's output. Anything not known to be compressed is deflated.
+     * @return ParallelZipWriter.STORED or ParallelZipWriter.DEFLATED.
+     */
+    public int methodForName(String name) {
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return COMPRESSED_EXTENSIONS.contains(extension) ? ParallelZipWriter.STORED : ParallelZipWriter.DEFLATED;
+    }
+
+    private static void readAt(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        int limit = buffer.position() + length;
+        buffer.limit(Math.min(limit, buffer.capacity()));
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * This recognises the compressed formats by their first bytes. PDFs aren't here: whether they compress depends
+     * on what is in them, so the entropy decides.
+     */
+    static boolean hasCompressedSignature(byte[] data, int length) {
+        return startsWith(data, length, 0, 0x50, 0x4B, 0x03, 0x04)             // ZIP, and DOCX/XLSX/JAR inside it
+            || startsWith(data, length, 0, 0x1F, 0x8B)                         // gzip
+            || startsWith(data, length, 0, 0x42, 0x5A, 0x68)                   // bzip2
+            || startsWith(data, length, 0, 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00) // xz
+            || startsWith(data, length, 0, 0x28, 0xB5, 0x2F, 0xFD)             // zstd
+            || startsWith(data, length, 0, 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C) // 7z
+            || startsWith(data, length, 0, 0x52, 0x61, 0x72, 0x21)             // RAR
+            || startsWith(data, length, 0, 0xFF, 0xD8, 0xFF)                   // JPEG
+            || startsWith(data, length, 0, 0x89, 0x50, 0x4E, 0x47)             // PNG
+            || startsWith(data, length, 0, 0x47, 0x49, 0x46, 0x38)             // GIF
+            || startsWith(data, length, 8, 0x57, 0x45, 0x42, 0x50)             // WebP (RIFF....WEBP)
+            || startsWith(data, length, 4, 0x66, 0x74, 0x79, 0x70)             // MP4, MOV, HEIC (....ftyp)
+            || startsWith(data, length, 0, 0x1A, 0x45, 0xDF, 0xA3)             // Matroska, WebM
+            || startsWith(data, length, 0, 0x4F, 0x67, 0x67, 0x53)             // Ogg
+            || startsWith(data, length, 0, 0x66, 0x4C, 0x61, 0x43)             // FLAC
+            || startsWith(data, length, 0, 0x49, 0x44, 0x33);                  // MP3 with an ID3 tag
+    }
+
+    private static boolean startsWith(byte[] data, int length, int offset, int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The Shannon entropy of the bytes, in bits per byte: about 4.5 for text, close to 8 for compressed data.
+     */
+    static double entropyBits(byte[] data, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+}
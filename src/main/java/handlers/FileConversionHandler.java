@@ -1,14 +1,23 @@
 package handlers;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.Locale;
 
 import javax.imageio.ImageIO;
 
@@ -24,6 +33,9 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 
+import diagnostics.ConversionEvent;
+import diagnostics.FormatConversionEvent;
+
 /**
  * This class handles all the file conversion operations.
  * It's bascially the engine of my application, doing all the heavy lifting and other hardd work.
@@ -31,6 +43,8 @@ import org.apache.poi.xwpf.usermodel.XWPFDocument;
  */
 public class FileConversionHandler {
 
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
     // A Static block to register additional image formats
     static {
         // USing TwelveMonkeys ImageIO plugins that are loaded automatically through ServiceLoader
@@ -44,6 +58,17 @@ public class FileConversionHandler {
      * @param targetFile The target PDF file.
      */
     public void convertDocxToPdf(File sourceFile, File targetFile) throws IOException {
+        FormatConversionEvent event = FormatConversionEvent.start("DOCX", "PDF");
+        boolean success = false;
+        try {
+            writeTarget(sourceFile, targetFile, (handler, file, out) -> handler.writeDocxAsPdf(file, out));
+            success = true;
+        } finally {
+            event.complete(sourceFile, targetFile, success);
+        }
+    }
+
+    private void writeDocxAsPdf(File sourceFile, OutputStream out) throws IOException {
         try (FileInputStream fis = new FileInputStream(sourceFile);
             XWPFDocument document = new XWPFDocument(fis);
             PDDocument pdfDocument = new PDDocument()) {
@@ -69,7 +94,7 @@ public class FileConversionHandler {
             }
 
             // Save the new PDF document
-            pdfDocument.save(targetFile);
+            pdfDocument.save(out);
         }
     }
 
@@ -80,9 +105,19 @@ public class FileConversionHandler {
      * @param targetFile The target DOCX file.
      */
     public void convertPdfToDocx(File sourceFile, File targetFile) throws IOException {
+        FormatConversionEvent event = FormatConversionEvent.start("PDF", "DOCX");
+        boolean success = false;
+        try {
+            writeTarget(sourceFile, targetFile, (handler, file, out) -> handler.writePdfAsDocx(file, out));
+            success = true;
+        } finally {
+            event.complete(sourceFile, targetFile, success);
+        }
+    }
+
+    private void writePdfAsDocx(File sourceFile, OutputStream out) throws IOException {
         try (PDDocument pdfDocument = PDDocument.load(sourceFile);
-            XWPFDocument docxDocument = new XWPFDocument();
-            FileOutputStream fos = new FileOutputStream(targetFile)) {
+            XWPFDocument docxDocument = new XWPFDocument()) {
 
             PDFTextStripper pdfStripper = new PDFTextStripper();
             String text = pdfStripper.getText(pdfDocument);
@@ -90,7 +125,7 @@ public class FileConversionHandler {
             // Going to add the extracted text to the DOCX document
             docxDocument.createParagraph().createRun().setText(text);
 
-            docxDocument.write(fos);
+            docxDocument.write(out);
         }
     }
 
@@ -101,9 +136,19 @@ public class FileConversionHandler {
      * @param targetFile The target XLSX file.
      */
     public void convertCsvToXlsx(File sourceFile, File targetFile) throws IOException {
+        FormatConversionEvent event = FormatConversionEvent.start("CSV", "XLSX");
+        boolean success = false;
+        try {
+            writeTarget(sourceFile, targetFile, (handler, file, out) -> handler.writeCsvAsXlsx(file, out));
+            success = true;
+        } finally {
+            event.complete(sourceFile, targetFile, success);
+        }
+    }
+
+    private void writeCsvAsXlsx(File sourceFile, OutputStream out) throws IOException {
         try (BufferedReader br = new BufferedReader(new FileReader(sourceFile));
-            Workbook workbook = new XSSFWorkbook();
-            FileOutputStream fos = new FileOutputStream(targetFile)) {
+            Workbook workbook = new XSSFWorkbook()) {
 
             Sheet sheet = workbook.createSheet("Sheet1");
             String line;
@@ -115,7 +160,7 @@ public class FileConversionHandler {
                     row.createCell(i).setCellValue(data[i]);
                 }
             }
-            workbook.write(fos);
+            workbook.write(out);
         }
     }
 
@@ -126,9 +171,21 @@ public class FileConversionHandler {
      * @param targetFile The target CSV file.
      */
     public void convertXlsxToCsv(File sourceFile, File targetFile) throws IOException {
+        FormatConversionEvent event = FormatConversionEvent.start("XLSX", "CSV");
+        boolean success = false;
+        try {
+            writeTarget(sourceFile, targetFile, (handler, file, out) -> handler.writeXlsxAsCsv(file, out));
+            success = true;
+        } finally {
+            event.complete(sourceFile, targetFile, success);
+        }
+    }
+
+    private void writeXlsxAsCsv(File sourceFile, OutputStream out) throws IOException {
         try (FileInputStream fis = new FileInputStream(sourceFile);
-            Workbook workbook = new XSSFWorkbook(fis);
-            FileWriter fw = new FileWriter(targetFile)) {
+            Workbook workbook = new XSSFWorkbook(fis)) {
+            // Flushed rather than closed at the end, since out belongs to the caller
+            Writer fw = new OutputStreamWriter(out);
 
             Sheet sheet = workbook.getSheetAt(0); // Gets the first sheet
             for (Row row : sheet) {
@@ -148,6 +205,7 @@ public class FileConversionHandler {
                 fw.append(rowData.toString());
                 fw.append("\n");
             }
+            fw.flush();
         }
     }
 
@@ -159,11 +217,61 @@ public class FileConversionHandler {
      * @param targetFormat The target format (e.g., "jpg", "png", "webp").
      */
     public void convertImage(File sourceFile, File targetFile, String targetFormat) throws IOException {
+        FormatConversionEvent event = FormatConversionEvent.start(formatOf(sourceFile), targetFormat.toUpperCase());
+        boolean success = false;
+        try {
+            writeTarget(sourceFile, targetFile, (handler, file, out) -> handler.writeImage(file, targetFormat, out));
+            success = true;
+        } finally {
+            event.complete(sourceFile, targetFile, success);
+        }
+    }
+
+    private void writeImage(File sourceFile, String targetFormat, OutputStream out) throws IOException {
         BufferedImage image = ImageIO.read(sourceFile);
         if (image == null) {
             throw new IOException("Could not read image from file: " + sourceFile.getAbsolutePath());
         }
-        ImageIO.write(image, targetFormat, targetFile);
+        if (!ImageIO.write(image, targetFormat, out)) {
+            throw new IOException("No image writer for " + targetFormat);
+        }
+    }
+
+    /**
+     * This checks whether there is a converter from a file to a format, going by the file's extension.
+     * A file already in the target format doesn't count.
+     * @param sourceFile The file to convert.
+     * @param targetFormat The format to convert to, e.g. "PDF".
+     */
+    public static boolean canConvert(File sourceFile, String targetFormat) {
+        return converterFor(sourceFile, targetFormat) != null;
+    }
+
+    /**
+     * This converts a file and writes the result to out rather than to a file, for outputs that go straight into an
+     * archive or over the network. out is flushed but left open.
+     * @param sourceFile The file to convert.
+     * @param targetFormat The format to convert to (PDF, DOCX, CSV, XLSX, JPG, PNG, WEBP).
+     * @param out Where the converted file is written.
+     * @throws IOException If the conversion fails or there is no converter for it.
+     */
+    public void convertTo(File sourceFile, String targetFormat, OutputStream out) throws IOException {
+        StreamConverter converter = converterFor(sourceFile, targetFormat);
+        if (converter == null) {
+            throw new IOException("Can't convert " + sourceFile.getName() + " to " + targetFormat);
+        }
+        FormatConversionEvent event = FormatConversionEvent.start(formatOf(sourceFile), targetFormat.toUpperCase());
+        boolean success = false;
+        // Some libraries close the stream they save to, which would end an archive entry early, and some write a byte
+        // at a time, which is slow all the way down through compression and encryption
+        CountingOutputStream target = new CountingOutputStream(new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE));
+        try {
+            converter.convert(this, sourceFile, target);
+            target.flush();
+            success = true;
+        } finally {
+            event.complete(sourceFile, target.count, success);
+        }
     }
 
     /**
@@ -175,6 +283,10 @@ public class FileConversionHandler {
      * @return true if conversion was successful, false otherwise.
      */
     public boolean convertFile(File sourceFile, File targetFile, String targetFormat) {
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        String outcome = "FAILED";
+        String errorMessage = null;
         try {
             String sourceName = sourceFile.getName().toLowerCase();
             String targetFormatLower = targetFormat.toLowerCase();
@@ -196,13 +308,125 @@ public class FileConversionHandler {
                 convertImage(sourceFile, targetFile, targetFormatLower);
             } else {
                 // Unsupported conversion
+                outcome = "UNSUPPORTED";
                 return false;
             }
             
+            outcome = "SUCCESS";
             return true;
         } catch (IOException e) {
+            errorMessage = e.getMessage();
             System.err.println("Conversion failed: " + e.getMessage());
             return false;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sourcePath = sourceFile.getAbsolutePath();
+                event.sourceFormat = formatOf(sourceFile);
+                event.targetFormat = targetFormat.toUpperCase();
+                event.inputBytes = sourceFile.length();
+                event.outputBytes = targetFile.length();
+                event.outcome = outcome;
+                event.errorMessage = errorMessage;
+                event.commit();
+            }
         }
     }
+
+    /**
+     * One of the writeXxx methods, which convert a file into a stream.
+     */
+    @FunctionalInterface
+    private interface StreamConverter {
+        void convert(FileConversionHandler handler, File sourceFile, OutputStream out) throws IOException;
+    }
+
+    private static StreamConverter converterFor(File sourceFile, String targetFormat) {
+        String source = formatOf(sourceFile);
+        String target = targetFormat.toUpperCase(Locale.ROOT);
+        if (source.equals("DOCX") && target.equals("PDF")) {
+            return (handler, file, out) -> handler.writeDocxAsPdf(file, out);
+        } else if (source.equals("PDF") && target.equals("DOCX")) {
+            return (handler, file, out) -> handler.writePdfAsDocx(file, out);
+        } else if (source.equals("CSV") && target.equals("XLSX")) {
+            return (handler, file, out) -> handler.writeCsvAsXlsx(file, out);
+        } else if (source.equals("XLSX") && target.equals("CSV")) {
+            return (handler, file, out) -> handler.writeXlsxAsCsv(file, out);
+        } else if (isImageFormat(source) && isImageFormat(target) && !normalized(source).equals(normalized(target))) {
+            String imageFormat = target.toLowerCase(Locale.ROOT);
+            return (handler, file, out) -> handler.writeImage(file, imageFormat, out);
+        }
+        return null;
+    }
+
+    private static boolean isImageFormat(String format) {
+        return format.equals("JPG") || format.equals("JPEG") || format.equals("PNG") || format.equals("WEBP");
+    }
+
+    private static String normalized(String format) {
+        return format.equals("JPEG") ? "JPG" : format;
+    }
+
+    /**
+     * This writes a converted file next to targetFile under a temporary name and only moves it into place once the
+     * conversion has worked, so a failed one leaves no empty or half-written file, and never replaces a good one.
+     */
+    private void writeTarget(File sourceFile, File targetFile, StreamConverter converter) throws IOException {
+        Path target = targetFile.toPath().toAbsolutePath();
+        // A sibling rather than createTempFile, whose owner-only permissions would stick to the finished file
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean moved = false;
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp.toFile()), OUTPUT_BUFFER_SIZE)) {
+                converter.convert(this, sourceFile, out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * This counts what goes through it for the JFR event, and turns close() into flush().
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            out.write(bytes, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * This gets the upper case extension of a file, which is how formats are named everywhere else in FileX.
+     */
+    private static String formatOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toUpperCase();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+package handlers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+
+import com.opencsv.CSVWriter;
+
+import database.ConversionHistoryDAO;
+import database.HistoryFilter;
+import models.ConversionRecord;
+
+/**
+ * This exports the conversion history to CSV or JSON Lines, optionally gzipped.
+ * Records are streamed straight from a forward-only query into a buffered writer, so exporting ten million rows
+ * takes no more memory than exporting ten. The file is written to a temp file next to the destination and only moved
+ * into place once it is complete, so a failed or cancelled export never leaves half a file behind. A new export is
+ * readable by its owner only, since the history is full of paths; one that replaces a file keeps that file's
+ * permissions.
+ */
+public class HistoryExporter {
+
+    public enum Format {
+        CSV, JSONL
+    }
+
+    /**
+     * Told how far an export has got, every PROGRESS_INTERVAL records and once at the end.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long exported, long total);
+    }
+
+    private static final int FETCH_SIZE = 1_000;
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] CSV_HEADER = {
+        "id", "timestamp", "source_path", "target_path", "source_format", "target_format",
+        "success", "duration_ms", "input_bytes", "output_bytes", "error_message"
+    };
+
+    private final ConversionHistoryDAO historyDAO;
+
+    public HistoryExporter() {
+        this(new ConversionHistoryDAO());
+    }
+
+    public HistoryExporter(ConversionHistoryDAO historyDAO) {
+        this.historyDAO = historyDAO;
+    }
+
+    /**
+     * This picks the format from a file name: .jsonl (or .json) is JSON Lines, anything else CSV. A .gz ending
+     * means gzip.
+     */
+    public static Format formatOf(Path destination) {
+        String name = destination.getFileName().toString().toLowerCase();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? Format.JSONL : Format.CSV;
+    }
+
+    public static boolean isGzipped(Path destination) {
+        return destination.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * This writes every record that passes the filter to destination, oldest first.
+     * Interrupting the thread (cancelling the Task running it) stops the export.
+     * @param destination The file to write; replaced if it exists.
+     * @param format CSV or JSONL.
+     * @param gzip Whether to gzip the output.
+     * @param filter Which records to export, e.g. a date range and status. HistoryFilter.ALL exports everything.
+     * @param progress Told how far the export has got, or null.
+     * @return The number of records exported.
+     * @throws IOException If the file can't be written, the history can't be read or the export was interrupted.
+     */
+    public long export(Path destination, Format format, boolean gzip, HistoryFilter filter, ProgressListener progress) throws IOException {
+        long total = progress == null ? -1 : historyDAO.countRecords(filter);
+        Path absolute = destination.toAbsolutePath();
+        // A name of its own, so a file that happens to be called <destination>.part is never touched
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName() + ".", ".part");
+        long exported;
+        try {
+            try (OutputStream file = Files.newOutputStream(temp);
+                 OutputStream out = gzip ? new GZIPOutputStream(file, BUFFER_SIZE) : file;
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                exported = format == Format.CSV ? writeCsv(writer, filter, progress, total) : writeJsonLines(writer, filter, progress, total);
+            }
+            moveIntoPlace(temp, absolute);
+        } catch (SQLException e) {
+            throw new IOException("Could not read the history: " + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (progress != null) {
+            progress.onProgress(exported, total);
+        }
+        return exported;
+    }
+
+    private static void moveIntoPlace(Path temp, Path destination) throws IOException {
+        if (Files.exists(destination)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(destination));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, like on Windows; there is nothing to carry over
+            }
+        }
+        try {
+            Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private long writeCsv(Writer writer, HistoryFilter filter, ProgressListener progress, long total) throws SQLException, IOException {
+        // CSVWriter does the quoting and escaping; it is deliberately not closed here, the caller owns the writer
+        CSVWriter csv = new CSVWriter(writer);
+        csv.writeNext(CSV_HEADER, false);
+        String[] row = new String[CSV_HEADER.length];
+        long[] count = {0};
+        historyDAO.streamRecords(filter, FETCH_SIZE, record -> {
+            row[0] = String.valueOf(record.getId());
+            row[1] = timestampOf(record);
+            row[2] = record.getSourcePath();
+            row[3] = record.getTargetPath();
+            row[4] = record.getSourceFormat();
+            row[5] = record.getTargetFormat();
+            row[6] = String.valueOf(record.isSuccess());
+            row[7] = valueOf(record.getDurationMs());
+            row[8] = valueOf(record.getInputBytes());
+            row[9] = valueOf(record.getOutputBytes());
+            row[10] = record.getErrorMessage() == null ? "" : record.getErrorMessage();
+            csv.writeNext(row, false);
+            reportProgress(++count[0], total, progress);
+        });
+        csv.flush();
+        if (csv.checkError()) {
+            throw new IOException("Could not write the CSV export");
+        }
+        return count[0];
+    }
+
+    private long writeJsonLines(Writer writer, HistoryFilter filter, ProgressListener progress, long total) throws SQLException, IOException {
+        StringBuilder line = new StringBuilder(256);
+        long[] count = {0};
+        historyDAO.streamRecords(filter, FETCH_SIZE, record -> {
+            line.setLength(0);
+            line.append("{\"id\":").append(record.getId());
+            line.append(",\"timestamp\":");
+            appendJsonString(line, timestampOf(record));
+            line.append(",\"source_path\":");
+            appendJsonString(line, record.getSourcePath());
+            line.append(",\"target_path\":");
+            appendJsonString(line, record.getTargetPath());
+            line.append(",\"source_format\":");
+            appendJsonString(line, record.getSourceFormat());
+            line.append(",\"target_format\":");
+            appendJsonString(line, record.getTargetFormat());
+            line.append(",\"success\":").append(record.isSuccess());
+            line.append(",\"duration_ms\":").append(record.getDurationMs());
+            line.append(",\"input_bytes\":").append(record.getInputBytes());
+            line.append(",\"output_bytes\":").append(record.getOutputBytes());
+            line.append(",\"error_message\":");
+            appendJsonString(line, record.getErrorMessage());
+            line.append("}\n");
+            writer.append(line);
+            reportProgress(++count[0], total, progress);
+        });
+        return count[0];
+    }
+
+    private static void reportProgress(long count, long total, ProgressListener progress) throws InterruptedIOException {
+        if (count % PROGRESS_INTERVAL == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Export cancelled");
+            }
+            if (progress != null) {
+                progress.onProgress(count, total);
+            }
+        }
+    }
+
+    private static String timestampOf(ConversionRecord record) {
+        return record.getTimestamp() == null ? null : record.getTimestamp().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    private static String valueOf(Long value) {
+        return value == null ? "" : value.toString();
+    }
+
+    /**
+     * This appends a JSON string literal, or null.
+     */
+    private static void appendJsonString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
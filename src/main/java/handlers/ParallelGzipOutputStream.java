@@ -0,0 +1,194 @@
+package handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This writes gzip with the deflating spread over several threads, the way pigz does it.
+ * The data is cut into blocks of 128 KB, and each block is deflated on its own on a worker thread, primed with the
+ * last 32 KB of the block before it as the dictionary so matches can still reach back across the cut. Every block but
+ * the last ends with a sync flush, which ends it on a byte boundary, so the blocks simply follow one another into a
+ * single deflate stream and the result is one ordinary gzip member that gunzip, Java's GZIPInputStream and everything
+ * else read. The output is a little bigger than single-threaded deflate (each flush costs a few bytes and the
+ * dictionary restarts at every block), in exchange for close to one core per thread.
+ * The CRC-32 is computed as the bytes come in, on the writing thread; only a bounded number of blocks is in flight.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int BLOCKS_IN_FLIGHT_PER_THREAD = 4;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final ExecutorService deflaters;
+    private final ThreadLocal<Deflater> deflater;
+    private final Queue<Deflater> allDeflaters = new ConcurrentLinkedQueue<>();
+    private final int maxInFlight;
+    private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private byte[] previousBlock;
+    private long totalIn;
+    private boolean closed;
+
+    /**
+     * @param out Where the gzip stream goes; closed when this is.
+     * @param level The Deflater compression level, 1 to 9.
+     * @param threads How many blocks to deflate at once.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int threads) throws IOException {
+        this.out = out;
+        this.maxInFlight = Math.max(1, threads) * BLOCKS_IN_FLIGHT_PER_THREAD;
+        this.deflaters = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "gzip-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deflater = ThreadLocal.withInitial(() -> {
+            Deflater compressor = new Deflater(level, true);
+            allDeflaters.add(compressor);
+            return compressor;
+        });
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        crc.update(bytes, off, len);
+        totalIn += len;
+        while (len > 0) {
+            int count = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(bytes, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == BLOCK_SIZE) {
+                submit(false);
+            }
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        byte[] dictionary = previousBlock;
+        inFlight.add(deflaters.submit(() -> deflate(data, length, dictionary, last)));
+        previousBlock = last ? null : data;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+        // Write whatever is finished at the head, and wait for the head once too much is in flight
+        while (!inFlight.isEmpty() && (inFlight.peek().isDone() || inFlight.size() > maxInFlight)) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Runs on a worker: deflates one block, ending on a byte boundary, or ending the stream if it is the last one.
+     */
+    private byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+        Deflater compressor = deflater.get();
+        compressor.reset();
+        if (dictionary != null) {
+            compressor.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+        }
+        compressor.setInput(data, 0, length);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+        byte[] buffer = new byte[BLOCK_SIZE];
+        if (last) {
+            compressor.finish();
+            while (!compressor.finished()) {
+                compressed.write(buffer, 0, compressor.deflate(buffer));
+            }
+        } else {
+            // A full buffer means the flush may not be done yet
+            int count;
+            do {
+                count = compressor.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, count);
+            } while (count == buffer.length);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(inFlight.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("gzip compression interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * This deflates what is left, writes the trailer and closes the stream underneath.
+     * The workers' Deflaters are ended here too, so their native memory goes now rather than whenever the GC gets to it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            while (!inFlight.isEmpty()) {
+                writeNext();
+            }
+            byte[] trailer = new byte[8];
+            long value = crc.getValue();
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (value >>> (8 * i));
+                trailer[4 + i] = (byte) (totalIn >>> (8 * i));
+            }
+            out.write(trailer);
+        } finally {
+            deflaters.shutdownNow();
+            try {
+                out.close();
+            } finally {
+                endDeflaters();
+            }
+        }
+    }
+
+    private void endDeflaters() {
+        try {
+            // A block still deflating after a failure finishes on its own; deflating can't be interrupted
+            deflaters.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Deflater compressor;
+        while ((compressor = allDeflaters.poll()) != null) {
+            compressor.end();
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.crypto.StandardDecrypter;
+import net.lingala.zip4j.model.AESExtraDataRecord;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.AesVersion;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+/**
+ * This extracts a ZIP archive with its entries inflated (and decrypted, if they are encrypted) in parallel.
+ * The central directory is read once, then every entry is checked before anything is written: names that would land
+ * outside the destination (zip-slip), entries whose data overlaps another's (the trick behind the small-file zip
+ * bombs), duplicate names, and archives that would unpack to more than the limit or the free disk space. While
+ * inflating, an entry that turns out bigger than its header says is stopped there, so lying headers get nowhere either.
+ * The entries are then spread over a pool of worker threads, biggest first, all reading the archive through one shared
+ * FileChannel with positional reads. Each output file is set to its final length before it is written.
+ * WinZip AES (AE-1 and AE-2, any key length, decrypted by WinZipAes) and the old ZipCrypto encryption are both
+ * supported, as are stored and deflated entries, which is everything FileX and the common tools write.
+ *
+ * Files already in the destination are only replaced if the OverwriteCheck agrees, asked once for all of them
+ * before anything is written. Names are compared case-folded, so two entries that differ only in case, which would be
+ * one file on Windows and macOS, are refused as duplicates.
+ *
+ * If extraction fails or is cancelled, the file being written is deleted; files that were already finished are kept.
+ */
+public class ParallelZipExtractor {
+
+    /**
+     * Told how far an extraction has got, a few times a second and once at the end.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long bytesExtracted, long totalBytes);
+    }
+
+    /**
+     * Asked whether files that are already in the destination may be replaced.
+     */
+    @FunctionalInterface
+    public interface OverwriteCheck {
+        /**
+         * @param existingFiles The files the archive would replace.
+         * @return Whether to go ahead; if not, nothing is extracted.
+         */
+        boolean allowOverwrite(List<Path> existingFiles);
+    }
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int ZIP_CRYPTO_HEADER_SIZE = 12;
+    private static final int PASSWORD_VERIFIER_SIZE = 2;
+    private static final int AES_MAC_SIZE = 10;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 200;
+    private static final long DEFAULT_MAX_TOTAL_BYTES = 64L * 1024 * 1024 * 1024;
+    private static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+
+    private final Path archive;
+    private final char[] password;
+    private final int threads;
+    private final long maxTotalBytes;
+    private final int maxEntries;
+    private final AtomicLong bytesExtracted = new AtomicLong();
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * @param archive The ZIP file to extract.
+     * @param password The password for encrypted entries, or null or empty if there are none.
+     * @param threads How many entries to extract at once, e.g. the number of cores.
+     */
+    public ParallelZipExtractor(Path archive, char[] password, int threads) {
+        this(archive, password, threads, DEFAULT_MAX_TOTAL_BYTES, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxTotalBytes The most the archive may unpack to, all entries together.
+     * @param maxEntries The most entries the archive may have.
+     */
+    public ParallelZipExtractor(Path archive, char[] password, int threads, long maxTotalBytes, int maxEntries) {
+        this.archive = archive;
+        this.password = password == null || password.length == 0 ? null : password.clone();
+        this.threads = Math.max(1, threads);
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * This extracts every entry into destination, keeping the folder structure and modification times.
+     * Interrupting the thread (cancelling the Task running it) stops the extraction.
+     * @param destination The folder to extract into; created if it doesn't exist. Existing files are replaced.
+     * @param listener Told about progress on the calling thread, or null.
+     * @return The number of files extracted.
+     * @throws IOException If the archive can't be read, fails a check, has the wrong password, or is corrupt.
+     */
+    public int extractTo(Path destination, ProgressListener listener) throws IOException {
+        return extractTo(destination, null, listener);
+    }
+
+    /**
+     * The same, asking overwriteCheck first if any of the files are already there.
+     * @param overwriteCheck Asked about files that already exist, or null to replace them.
+     * @return The number of files extracted, 0 if overwriteCheck said no.
+     */
+    public int extractTo(Path destination, OverwriteCheck overwriteCheck, ProgressListener listener) throws IOException {
+        Path base = destination.toAbsolutePath().normalize();
+        List<FileHeader> headers = readHeaders();
+        List<Target> files = new ArrayList<>();
+        List<Target> directories = new ArrayList<>();
+        long totalBytes = plan(base, headers, files, directories);
+        if (overwriteCheck != null) {
+            List<Path> existing = new ArrayList<>();
+            for (Target file : files) {
+                if (Files.exists(file.path, LinkOption.NOFOLLOW_LINKS)) {
+                    existing.add(file.path);
+                }
+            }
+            if (!existing.isEmpty() && !overwriteCheck.allowOverwrite(existing)) {
+                return 0;
+            }
+        }
+
+        Files.createDirectories(base);
+        // Folders are made here, before the workers start, so no two workers race to create the same one
+        Set<Path> created = new HashSet<>();
+        for (Target directory : directories) {
+            Files.createDirectories(directory.path);
+            created.add(directory.path);
+        }
+        for (Target file : files) {
+            Path parent = file.path.getParent();
+            if (created.add(parent)) {
+                Files.createDirectories(parent);
+            }
+        }
+
+        // Biggest first, so a large file isn't left to run on its own at the end
+        files.sort(Comparator.comparingLong((Target target) -> target.header.getUncompressedSize()).reversed());
+        bytesExtracted.set(0);
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "zip-extractor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(workers);
+            List<Future<Void>> futures = new ArrayList<>(files.size());
+            for (Target file : files) {
+                futures.add(completion.submit(() -> {
+                    extractEntry(channel, file);
+                    return null;
+                }));
+            }
+            waitForAll(completion, futures, listener, totalBytes);
+        } finally {
+            workers.shutdownNow();
+            awaitWorkers(workers);
+        }
+
+        // Writing the files changed the folders' times, so those are set last, deepest first
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            Target directory = directories.get(i);
+            Files.setLastModifiedTime(directory.path, FileTime.fromMillis(directory.header.getLastModifiedTimeEpoch()));
+        }
+        if (listener != null) {
+            listener.onProgress(bytesExtracted.get(), totalBytes);
+        }
+        return files.size();
+    }
+
+    private List<FileHeader> readHeaders() throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            if (!zipFile.isValidZipFile()) {
+                throw new IOException(archive.getFileName() + " is not a ZIP archive");
+            }
+            if (zipFile.isSplitArchive()) {
+                throw new IOException(archive.getFileName() + " is split into volumes, which can't be extracted here");
+            }
+            return zipFile.getFileHeaders();
+        }
+    }
+
+    /**
+     * This runs the checks on every entry and works out where each goes, before anything is written.
+     * @return The total uncompressed size of the files.
+     */
+    private long plan(Path base, List<FileHeader> headers, List<Target> files, List<Target> directories) throws IOException {
+        if (headers.size() > maxEntries) {
+            throw new IOException("The archive has " + headers.size() + " entries, more than the limit of " + maxEntries);
+        }
+        long archiveSize = Files.size(archive);
+        long totalBytes = 0;
+        // Case-folded, since names that differ only in case are the same file on Windows and macOS
+        Set<String> seen = new HashSet<>();
+        for (FileHeader header : headers) {
+            Path target = base.resolve(header.getFileName()).normalize();
+            if (!target.startsWith(base) || target.equals(base)) {
+                throw new IOException("The entry " + header.getFileName() + " would be extracted outside " + base);
+            }
+            if (!seen.add(target.toString().toLowerCase(Locale.ROOT))) {
+                throw new IOException("The entry " + header.getFileName() + " appears more than once");
+            }
+            if (header.isDirectory()) {
+                directories.add(new Target(header, target));
+                continue;
+            }
+            if (header.getCompressedSize() < 0 || header.getUncompressedSize() < 0
+                    || header.getOffsetLocalHeader() + header.getCompressedSize() > archiveSize) {
+                throw new IOException("The entry " + header.getFileName() + " has sizes that don't fit in the archive");
+            }
+            if (header.isEncrypted() && password == null) {
+                throw new IOException("The archive is password protected; enter the password to extract it");
+            }
+            totalBytes += header.getUncompressedSize();
+            if (totalBytes > maxTotalBytes) {
+                throw new IOException("The archive would unpack to more than " + maxTotalBytes / (1024 * 1024) + " MB");
+            }
+            files.add(new Target(header, target));
+        }
+        checkNoOverlaps(files);
+        // Parents sort before their children, which is the order they have to be created in
+        directories.sort(Comparator.comparing(directory -> directory.path));
+        long usable = Files.getFileStore(Files.exists(base) ? base : existingParent(base)).getUsableSpace();
+        if (totalBytes > usable) {
+            throw new IOException("The archive needs " + totalBytes / (1024 * 1024) + " MB but only "
+                + usable / (1024 * 1024) + " MB is free");
+        }
+        return totalBytes;
+    }
+
+    /**
+     * Every entry's local header and data has to have the archive bytes to itself. Bombs that expand to terabytes
+     * from a few kilobytes do it by pointing many entries at the same compressed data.
+     */
+    private static void checkNoOverlaps(List<Target> files) throws IOException {
+        List<FileHeader> byOffset = new ArrayList<>(files.size());
+        for (Target file : files) {
+            byOffset.add(file.header);
+        }
+        byOffset.sort(Comparator.comparingLong(FileHeader::getOffsetLocalHeader));
+        long end = 0;
+        for (FileHeader header : byOffset) {
+            if (header.getOffsetLocalHeader() < end) {
+                throw new IOException("The entry " + header.getFileName() + " overlaps another entry's data");
+            }
+            end = header.getOffsetLocalHeader() + 30 + header.getCompressedSize();
+        }
+    }
+
+    private static Path existingParent(Path path) {
+        Path parent = path;
+        while (parent != null && !Files.exists(parent)) {
+            parent = parent.getParent();
+        }
+        return parent == null ? path.getRoot() : parent;
+    }
+
+    private void waitForAll(ExecutorCompletionService<Void> completion, List<Future<Void>> futures,
+                            ProgressListener listener, long totalBytes) throws IOException {
+        int remaining = futures.size();
+        try {
+            while (remaining > 0) {
+                Future<Void> done = completion.poll(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (listener != null) {
+                    listener.onProgress(bytesExtracted.get(), totalBytes);
+                }
+                if (done != null) {
+                    done.get();
+                    remaining--;
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("ZIP extraction cancelled");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Waits a little for cancelled workers to delete their half-written files. Interrupting a thread in the middle
+     * of a FileChannel read closes the channel, so they don't take long.
+     */
+    private static void awaitWorkers(ExecutorService workers) {
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs on a worker: read the entry's bytes, decrypt and inflate them, and write them to the target with their CRC
+     * checked.
+     */
+    private void extractEntry(FileChannel channel, Target file) throws IOException {
+        FileHeader header = file.header;
+        long expected = header.getUncompressedSize();
+        InputStream in = decrypted(header, new RangeInputStream(channel, ParallelZipWriter.dataOffset(channel, header),
+            header.getCompressedSize()));
+        int method = compressionMethod(header);
+        Inflater inflater = null;
+        if (method == DEFLATED) {
+            inflater = inflaters.get();
+            inflater.reset();
+        } else if (method != STORED) {
+            throw new IOException("The entry " + header.getFileName() + " uses compression method " + method
+                + ", which can't be extracted here");
+        }
+
+        CRC32 crc = new CRC32();
+        long written = 0;
+        try (RandomAccessFile output = new RandomAccessFile(file.path.toFile(), "rw")) {
+            // Setting the length first lets the file system find room for the whole file in one go
+            output.setLength(expected);
+            FileChannel out = output.getChannel();
+            byte[] input = new byte[COPY_BUFFER_SIZE];
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (true) {
+                int count;
+                if (inflater == null) {
+                    count = in.read(buffer);
+                } else {
+                    count = inflate(inflater, in, input, buffer, header);
+                }
+                if (count < 0) {
+                    break;
+                }
+                written += count;
+                if (written > expected) {
+                    throw new IOException("The entry " + header.getFileName() + " is bigger than its header says");
+                }
+                crc.update(buffer, 0, count);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, count);
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                bytesExtracted.addAndGet(count);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("ZIP extraction cancelled");
+                }
+            }
+            if (written != expected) {
+                throw new IOException("The entry " + header.getFileName() + " is shorter than its header says");
+            }
+            if (in instanceof AesInputStream) {
+                ((AesInputStream) in).verifyMac();
+            }
+            // AE-2 leaves the CRC out on purpose; the authentication code has already covered the data
+            if (!isAe2(header) && crc.getValue() != header.getCrc()) {
+                throw new IOException("The entry " + header.getFileName() + " is corrupt (CRC mismatch)");
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file.path);
+            throw e;
+        }
+        Files.setLastModifiedTime(file.path, FileTime.fromMillis(header.getLastModifiedTimeEpoch()));
+    }
+
+    /**
+     * This fills buffer with inflated bytes, feeding the inflater from in as it runs out.
+     * @return How many bytes were inflated, or -1 once the entry is finished.
+     */
+    private static int inflate(Inflater inflater, InputStream in, byte[] input, byte[] buffer, FileHeader header) throws IOException {
+        try {
+            while (true) {
+                int count = inflater.inflate(buffer);
+                if (count > 0) {
+                    return count;
+                }
+                if (inflater.finished()) {
+                    return -1;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("The entry " + header.getFileName() + " is corrupt");
+                }
+                int read = in.read(input);
+                if (read < 0) {
+                    throw new IOException("The entry " + header.getFileName() + " ends before its data does");
+                }
+                inflater.setInput(input, 0, read);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("The entry " + header.getFileName() + " is corrupt: " + e.getMessage(), e);
+        }
+    }
+
+    private InputStream decrypted(FileHeader header, RangeInputStream raw) throws IOException {
+        if (!header.isEncrypted()) {
+            return raw;
+        }
+        if (header.getEncryptionMethod() == EncryptionMethod.AES) {
+            return new AesInputStream(raw, header, password);
+        }
+        if (header.getEncryptionMethod() == EncryptionMethod.ZIP_STANDARD) {
+            byte[] encryptionHeader = raw.readExactly(ZIP_CRYPTO_HEADER_SIZE);
+            // ZipCrypto checks the password against the CRC, or the time if the CRC wasn't known when it was written
+            StandardDecrypter decrypter = new StandardDecrypter(password, header.getCrc(), header.getLastModifiedTime(),
+                encryptionHeader, true);
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] bytes, int off, int len) throws IOException {
+                    int count = raw.read(bytes, off, len);
+                    if (count > 0) {
+                        decrypter.decryptData(bytes, off, count);
+                    }
+                    return count;
+                }
+            };
+        }
+        throw new IOException("The entry " + header.getFileName() + " uses an encryption that can't be extracted here");
+    }
+
+    private static int compressionMethod(FileHeader header) {
+        AESExtraDataRecord aes = header.getAesExtraDataRecord();
+        if (header.getEncryptionMethod() == EncryptionMethod.AES && aes != null) {
+            return aes.getCompressionMethod().getCode();
+        }
+        return header.getCompressionMethod().getCode();
+    }
+
+    private static boolean isAe2(FileHeader header) {
+        AESExtraDataRecord aes = header.getAesExtraDataRecord();
+        return header.getEncryptionMethod() == EncryptionMethod.AES && aes != null && aes.getAesVersion() == AesVersion.TWO;
+    }
+
+    private static final class Target {
+        final FileHeader header;
+        final Path path;
+
+        Target(FileHeader header, Path path) {
+            this.header = header;
+            this.path = path;
+        }
+    }
+
+    /**
+     * This reads length bytes of the archive from offset on, with positional reads on a shared channel.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        RangeInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(bytes, off, (int) Math.min(len, remaining)), position);
+            if (count < 0) {
+                throw new IOException("The archive ends in the middle of an entry");
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        long remaining() {
+            return remaining;
+        }
+
+        byte[] readExactly(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new IOException("The archive ends in the middle of an entry");
+                }
+                read += count;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * This decrypts a WinZip AES entry: the salt and password verifier come first, then the data encrypted with AES in
+     * counter mode, then the 10 byte authentication code, which verifyMac checks once all the data has been read.
+     */
+    private static final class AesInputStream extends InputStream {
+        private final RangeInputStream raw;
+        private final WinZipAes decrypter;
+        private final String name;
+        private final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        private long dataRemaining;
+        private int bufferPosition;
+        private int bufferLength;
+
+        AesInputStream(RangeInputStream raw, FileHeader header, char[] password) throws IOException {
+            this.raw = raw;
+            this.name = header.getFileName();
+            AESExtraDataRecord aes = header.getAesExtraDataRecord();
+            if (aes == null) {
+                throw new IOException("The entry " + name + " is AES encrypted but has no AES header");
+            }
+            byte[] salt = raw.readExactly(aes.getAesKeyStrength().getSaltLength());
+            byte[] verifier = raw.readExactly(PASSWORD_VERIFIER_SIZE);
+            this.decrypter = WinZipAes.forDecryption(password, salt, aes.getAesKeyStrength().getKeyLength());
+            if (!decrypter.matchesPasswordVerifier(verifier)) {
+                throw new IOException("Wrong password for " + name);
+            }
+            this.dataRemaining = raw.remaining() - AES_MAC_SIZE;
+            if (dataRemaining < 0) {
+                throw new IOException("The entry " + name + " is too short to be AES encrypted");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (bufferPosition == bufferLength) {
+                if (dataRemaining == 0) {
+                    return -1;
+                }
+                bufferLength = (int) Math.min(buffer.length, dataRemaining);
+                bufferPosition = 0;
+                int read = 0;
+                while (read < bufferLength) {
+                    int count = raw.read(buffer, read, bufferLength - read);
+                    if (count < 0) {
+                        throw new IOException("The archive ends in the middle of an entry");
+                    }
+                    read += count;
+                }
+                decrypter.decrypt(buffer, 0, bufferLength);
+                dataRemaining -= bufferLength;
+            }
+            int count = Math.min(len, bufferLength - bufferPosition);
+            System.arraycopy(buffer, bufferPosition, bytes, off, count);
+            bufferPosition += count;
+            return count;
+        }
+
+        void verifyMac() throws IOException {
+            // The code covers all of the data, including anything after the end of the deflated stream
+            byte[] rest = new byte[COPY_BUFFER_SIZE];
+            while (read(rest, 0, rest.length) >= 0) {
+                // Skip to the end
+            }
+            byte[] stored = raw.readExactly(AES_MAC_SIZE);
+            if (!decrypter.matchesMac(stored)) {
+                throw new IOException("The entry " + name + " failed its authentication check; it is corrupt or was tampered with");
+            }
+        }
+    }
+}
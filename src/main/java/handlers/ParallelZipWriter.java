@@ -0,0 +1,1099 @@
+package handlers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import net.lingala.zip4j.model.AESExtraDataRecord;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.AesVersion;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+import net.lingala.zip4j.util.Zip4jUtil;
+
+/**
+ * This writes a ZIP archive with its entries compressed in parallel.
+ * Each entry is deflated (and AES encrypted, if there is a password) on a pool of worker threads into its own scratch
+ * buffer, which spills over into a temp file once it gets big; files stored without encryption skip the buffer and are
+ * copied straight from disk when their turn comes. The thread adding the entries writes the finished ones
+ * to the archive strictly in the order they were added, with the CRC and sizes already known, so every local header is
+ * complete and no data descriptors are needed. Only a bounded number of entries is in flight at once, which keeps the
+ * memory use flat however big the folder is. The central directory records are not kept as objects either: each one
+ * is serialized as its entry is written, into a buffer that spills to a temp file like the entries do, so a million
+ * files cost a temp file rather than a million objects on the heap.
+ * The result is a standard ZIP: ZIP64 fields are used where sizes, offsets or the entry count need them, and
+ * encrypted entries are WinZip AE-2 AES-256, the same as zip4j writes, so zip4j and the usual tools open them. The
+ * encryption itself is WinZipAes, on the JDK's hardware-accelerated AES.
+ * Entries are the unit of parallelism, so a folder of many files gets close to one core per file being compressed,
+ * while a single huge file is still compressed on one thread.
+ *
+ * When an older version of the archive is at hand, addFileOrCopy copies the entries whose file hasn't changed straight
+ * from it, compressed bytes and all, and only compresses the rest.
+ *
+ * With a split size, the archive is written as numbered volumes of at most that size, the way PKZIP and zip4j split
+ * them: name.z01, name.z02 and so on, with the last volume named name.zip. Headers never straddle two volumes.
+ *
+ * Usage: add entries, then finish(); if anything goes wrong on the way, abort() instead.
+ */
+public class ParallelZipWriter {
+
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+    /**
+     * For addFile: let CompressionAdvisor choose between STORED and DEFLATED on the worker thread.
+     */
+    public static final int AUTO = -1;
+
+    /**
+     * Writes the uncompressed content of an entry. Called on a worker thread.
+     */
+    @FunctionalInterface
+    public interface EntryContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final int AES_METHOD = 99;
+    private static final int AES_EXTRA_ID = 0x9901;
+    private static final int AES_OVERHEAD = 16 + 2 + 10;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int UTF8_NAMES_FLAG = 0x0800;
+    private static final int ENCRYPTED_FLAG = 0x0001;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int VERSION_AES = 51;
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+    // Entries whose compressed data grows past this go to a temp file instead of staying on the heap
+    private static final int SPILL_THRESHOLD = 4 * 1024 * 1024;
+    private static final int ENTRIES_IN_FLIGHT_PER_THREAD = 4;
+    // zip4j's NORMAL level, so archives come out the same size as they did with addFolder
+    static final int DEFAULT_LEVEL = 5;
+
+    private final VolumeOutputStream out;
+    private final char[] password;
+    private final ExecutorService compressors;
+    private final int maxInFlight;
+    private final ArrayDeque<Future<CompressedEntry>> inFlight = new ArrayDeque<>();
+    // The central directory records of the entries written so far, ready to go out as they are
+    private final SpillBuffer centralRecords = new SpillBuffer();
+    private final ThreadLocal<Deflater> deflaters;
+    private final Queue<Deflater> allDeflaters = new ConcurrentLinkedQueue<>();
+    private final CompressionAdvisor advisor = new CompressionAdvisor();
+    private int entriesWritten;
+    private int storedEntries;
+    private int copiedEntries;
+
+    /**
+     * @param target The archive to write; replaced if it exists.
+     * @param password The password to AES encrypt the entries with, or null or empty for none.
+     * @param threads How many entries to compress at once, e.g. the number of cores.
+     */
+    public ParallelZipWriter(Path target, char[] password, int threads) throws IOException {
+        this(target, password, threads, DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param level The Deflater compression level, 0 to 9.
+     */
+    public ParallelZipWriter(Path target, char[] password, int threads, int level) throws IOException {
+        this(target, password, threads, level, 0);
+    }
+
+    /**
+     * @param splitSize The most bytes each volume holds, at least ZipOptions.MIN_SPLIT_SIZE, or 0 for one archive.
+     */
+    public ParallelZipWriter(Path target, char[] password, int threads, int level, long splitSize) throws IOException {
+        if (splitSize != 0 && splitSize < ZipOptions.MIN_SPLIT_SIZE) {
+            throw new IllegalArgumentException("Split size " + splitSize + " is below " + ZipOptions.MIN_SPLIT_SIZE);
+        }
+        this.password = password == null || password.length == 0 ? null : password.clone();
+        this.maxInFlight = Math.max(1, threads) * ENTRIES_IN_FLIGHT_PER_THREAD;
+        this.compressors = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "zip-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // One Deflater per worker, reset between entries, instead of a new one (and its native memory) per entry
+        this.deflaters = ThreadLocal.withInitial(() -> {
+            Deflater deflater = new Deflater(level, true);
+            allDeflaters.add(deflater);
+            return deflater;
+        });
+        try {
+            this.out = new VolumeOutputStream(target, splitSize);
+        } catch (IOException | RuntimeException e) {
+            compressors.shutdownNow();
+            throw e;
+        }
+    }
+
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * This adds a folder entry.
+     * @param name The folder's path in the archive, with '/' separators; a trailing '/' is added if missing.
+     * @param lastModified The folder's modification time in epoch millis.
+     */
+    public void addDirectory(String name, long lastModified) throws IOException {
+        String directoryName = name.endsWith("/") ? name : name + "/";
+        CompressedEntry entry = new CompressedEntry(directoryName, Zip4jUtil.epochToExtendedDosTime(lastModified), STORED,
+            false, true, new SpillBuffer());
+        enqueue(CompletableFuture.completedFuture(entry));
+    }
+
+    /**
+     * This adds a file from disk.
+     * @param name The file's path in the archive, with '/' separators.
+     * @param file The file to add.
+     * @param method DEFLATED, STORED or AUTO.
+     */
+    public void addFile(String name, Path file, int method) throws IOException {
+        addFile(name, file, Files.getLastModifiedTime(file).toMillis(), method);
+    }
+
+    /**
+     * This adds a file from disk whose modification time is already known, e.g. from a directory walk.
+     * A file that was deflated but came out no smaller is stored instead; unlike a stream it can be read again.
+     * @param method DEFLATED, STORED or AUTO.
+     */
+    public void addFile(String name, Path file, long lastModified, int method) throws IOException {
+        if (method != STORED && method != DEFLATED && method != AUTO) {
+            throw new IllegalArgumentException("Unsupported compression method " + method);
+        }
+        long dosTime = Zip4jUtil.epochToExtendedDosTime(lastModified);
+        enqueue(compressors.submit(() -> compressFile(name, file, dosTime, method)));
+    }
+
+    /**
+     * This adds a file from disk, copying its entry from an older version of the archive if the file hasn't changed.
+     * The file counts as unchanged if its size and modification time match the old entry; if only the time differs,
+     * as after a copy or a touch, the CRC-32 of the file decides, which costs a read but no compressing. Encrypted
+     * entries have no CRC to compare (AE-2 leaves it out), so for them a different time means compressing again.
+     * An entry is only copied if it is encrypted the same way this archive is, and the caller has to have checked
+     * that the old archive's password is this one's.
+     * Whether to copy is decided on a worker thread, like the compressing.
+     * @param name The file's path in the archive, with '/' separators.
+     * @param file The file to add.
+     * @param lastModified The file's modification time in epoch millis.
+     * @param archive The older archive.
+     * @param previous The file's entry in the older archive, or null if it isn't there.
+     */
+    public void addFileOrCopy(String name, Path file, long lastModified, Path archive, FileHeader previous) throws IOException {
+        long dosTime = Zip4jUtil.epochToExtendedDosTime(lastModified);
+        enqueue(compressors.submit(() -> {
+            if (previous == null || !canCopy(previous) || Files.size(file) != previous.getUncompressedSize()) {
+                return compressFile(name, file, dosTime, AUTO);
+            }
+            if ((previous.getLastModifiedTime() & ZIP64_LIMIT) != (dosTime & ZIP64_LIMIT)
+                    && (previous.isEncrypted() || crcOf(file) != previous.getCrc())) {
+                return compressFile(name, file, dosTime, AUTO);
+            }
+            return copiedEntry(name, dosTime, archive, previous);
+        }));
+    }
+
+    /**
+     * Runs on a worker: a file that was deflated but came out no smaller is stored instead.
+     * Without encryption a stored file isn't buffered at all: the worker only works out its CRC and size, and the
+     * bytes go from the file straight into the archive when it is the entry's turn. Big photos and videos, which are
+     * what gets stored, are then read twice and written once, rather than copied to a scratch file and back.
+     */
+    private CompressedEntry compressFile(String name, Path file, long dosTime, int method) throws IOException {
+        int chosen = method == AUTO ? advisor.methodFor(file) : method;
+        if (chosen == STORED && password == null) {
+            CrcOutputStream raw = new CrcOutputStream(OutputStream.nullOutputStream());
+            Files.copy(file, raw);
+            return storedFile(name, file, dosTime, raw.crc.getValue(), raw.count);
+        }
+        EntryContent content = entryOut -> Files.copy(file, entryOut);
+        CompressedEntry entry = compress(name, dosTime, chosen, content);
+        if (chosen == DEFLATED && entry.payloadSize() >= entry.uncompressedSize && entry.uncompressedSize > 0) {
+            entry.data.discard();
+            // Deflating already worked out the CRC and size, so only an encrypted entry has to read the file again
+            entry = password == null ? storedFile(name, file, dosTime, entry.crc, entry.uncompressedSize)
+                : compress(name, dosTime, STORED, content);
+        }
+        return entry;
+    }
+
+    private CompressedEntry storedFile(String name, Path file, long dosTime, long crc, long size) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("ZIP creation cancelled");
+        }
+        CompressedEntry entry = new CompressedEntry(name, dosTime, STORED, false, false, new SourceFile(file, crc, size));
+        entry.crc = crc;
+        entry.uncompressedSize = size;
+        entry.compressedSize = size;
+        return entry;
+    }
+
+    /**
+     * Whether an old entry's bytes can go into this archive as they are: stored or deflated, and either not encrypted
+     * when this archive isn't, or AE-2 AES-256 when it is, since that is all the headers here can describe.
+     */
+    private boolean canCopy(FileHeader previous) {
+        if (previous.isDirectory() || previous.isEncrypted() != (password != null)) {
+            return false;
+        }
+        int method = previous.getCompressionMethod().getCode();
+        if (previous.isEncrypted()) {
+            AESExtraDataRecord aes = previous.getAesExtraDataRecord();
+            if (previous.getEncryptionMethod() != EncryptionMethod.AES || aes == null
+                    || aes.getAesVersion() != AesVersion.TWO || aes.getAesKeyStrength() != AesKeyStrength.KEY_STRENGTH_256) {
+                return false;
+            }
+            method = aes.getCompressionMethod().getCode();
+        }
+        return method == STORED || method == DEFLATED;
+    }
+
+    private CompressedEntry copiedEntry(String name, long dosTime, Path archive, FileHeader previous) throws IOException {
+        int method = previous.isEncrypted()
+            ? previous.getAesExtraDataRecord().getCompressionMethod().getCode()
+            : previous.getCompressionMethod().getCode();
+        RawRange data = new RawRange(archive, dataOffset(archive, previous), previous.getCompressedSize());
+        CompressedEntry entry = new CompressedEntry(name, dosTime, method, previous.isEncrypted(), false, data);
+        entry.crc = previous.getCrc();
+        entry.uncompressedSize = previous.getUncompressedSize();
+        entry.compressedSize = previous.getCompressedSize();
+        entry.copied = true;
+        return entry;
+    }
+
+    /**
+     * This finds where an entry's data starts in an archive: after its local header, whose name and extra field can
+     * differ in length from the central directory's copy.
+     */
+    static long dataOffset(Path archive, FileHeader header) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            return dataOffset(channel, header);
+        }
+    }
+
+    /**
+     * The same, reading from a channel that is already open. Only positional reads are used, so the channel can be
+     * shared between threads.
+     */
+    static long dataOffset(FileChannel channel, FileHeader header) throws IOException {
+        ByteBuffer local = littleEndian(30);
+        long position = header.getOffsetLocalHeader();
+        while (local.hasRemaining()) {
+            if (channel.read(local, position + local.position()) < 0) {
+                throw new IOException("Truncated local header for " + header.getFileName());
+            }
+        }
+        if (local.getInt(0) != 0x04034b50) {
+            throw new IOException("No local header for " + header.getFileName() + " at offset " + position);
+        }
+        int nameLength = local.getShort(26) & 0xFFFF;
+        int extraLength = local.getShort(28) & 0xFFFF;
+        return position + 30 + nameLength + extraLength;
+    }
+
+    private static long crcOf(Path file) throws IOException {
+        CrcOutputStream crc = new CrcOutputStream(OutputStream.nullOutputStream());
+        Files.copy(file, crc);
+        return crc.crc.getValue();
+    }
+
+    /**
+     * This adds an entry whose content is written by content, on a worker thread. Entries end up in the archive in
+     * the order they were added, whenever their compression finishes.
+     * @param name The entry's path in the archive, with '/' separators.
+     * @param lastModified The modification time to record, in epoch millis.
+     * @param method DEFLATED or STORED.
+     * @param content Writes the uncompressed bytes.
+     */
+    public void addEntry(String name, long lastModified, int method, EntryContent content) throws IOException {
+        if (method != STORED && method != DEFLATED) {
+            throw new IllegalArgumentException("Unsupported compression method " + method);
+        }
+        long dosTime = Zip4jUtil.epochToExtendedDosTime(lastModified);
+        enqueue(compressors.submit(() -> compress(name, dosTime, method, content)));
+    }
+
+    /**
+     * This waits for the remaining entries, writes them and the central directory, and closes the archive.
+     */
+    public void finish() throws IOException {
+        try {
+            while (!inFlight.isEmpty()) {
+                writeNext();
+            }
+            writeCentralDirectory();
+            out.finish();
+        } finally {
+            centralRecords.discard();
+            compressors.shutdownNow();
+            endDeflaters();
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    /**
+     * This stops everything, throws away the scratch files and deletes the half-written archive.
+     */
+    public void abort() {
+        compressors.shutdownNow();
+        for (Future<CompressedEntry> future : inFlight) {
+            future.cancel(true);
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get().data.discard();
+                } catch (InterruptedException | ExecutionException ignored) {
+                    // Nothing to clean up for an entry that failed
+                }
+            }
+        }
+        inFlight.clear();
+        endDeflaters();
+        centralRecords.discard();
+        out.delete();
+        if (password != null) {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * This ends the workers' Deflaters once the pool has stopped, so their native memory goes now rather than
+     * whenever the GC gets to it.
+     */
+    private void endDeflaters() {
+        try {
+            // An entry still compressing after a failure finishes on its own; deflating can't be interrupted
+            compressors.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Deflater deflater;
+        while ((deflater = allDeflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return The number of entries written so far.
+     */
+    public int getEntriesWritten() {
+        return entriesWritten;
+    }
+
+    /**
+     * @return How many files the archive is made of: 1 unless it is split.
+     */
+    public int getVolumes() {
+        return out.disk() + 1;
+    }
+
+    /**
+     * @return How many of the files written so far were copied from an older archive by addFileOrCopy.
+     */
+    public int getCopiedEntries() {
+        return copiedEntries;
+    }
+
+    /**
+     * @return How many of the files compressed so far were stored rather than deflated.
+     */
+    public int getStoredEntries() {
+        return storedEntries;
+    }
+
+    private void enqueue(Future<CompressedEntry> future) throws IOException {
+        inFlight.add(future);
+        // Write whatever is finished at the head, and wait for the head once too much is in flight
+        while (!inFlight.isEmpty() && (inFlight.peek().isDone() || inFlight.size() > maxInFlight)) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        CompressedEntry entry;
+        try {
+            entry = inFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("ZIP creation interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+        try {
+            writeLocalEntry(entry);
+        } finally {
+            entry.data.discard();
+        }
+    }
+
+    /**
+     * Runs on a worker: CRC and count the raw bytes, deflate them, encrypt them, and keep the result.
+     */
+    private CompressedEntry compress(String name, long dosTime, int method, EntryContent content) throws IOException {
+        boolean encrypted = password != null;
+        SpillBuffer data = new SpillBuffer();
+        CompressedEntry entry = new CompressedEntry(name, dosTime, method, encrypted, false, data);
+        OutputStream sink = encrypted ? new AesOutputStream(data, password) : data;
+        Deflater deflater = null;
+        OutputStream compressed = sink;
+        if (method == DEFLATED) {
+            deflater = deflaters.get();
+            deflater.reset();
+            compressed = new DeflaterOutputStream(sink, deflater, COPY_BUFFER_SIZE);
+        }
+        try {
+            CrcOutputStream raw = new CrcOutputStream(compressed);
+            content.writeTo(raw);
+            raw.flush();
+            if (compressed instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) compressed).finish();
+            }
+            if (sink instanceof AesOutputStream) {
+                ((AesOutputStream) sink).finish();
+            }
+            entry.crc = raw.crc.getValue();
+            entry.uncompressedSize = raw.count;
+            entry.compressedSize = data.size();
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("ZIP creation cancelled");
+            }
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            entry.data.discard();
+            throw e;
+        }
+    }
+
+    private void writeLocalEntry(CompressedEntry entry) throws IOException {
+        boolean zip64 = entry.uncompressedSize >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+        byte[] extra = localExtra(entry, zip64);
+        ByteBuffer header = littleEndian(30 + entry.name.length + extra.length);
+        header.putInt(0x04034b50);
+        header.putShort((short) versionNeeded(entry, zip64));
+        header.putShort((short) entry.flags());
+        header.putShort((short) entry.headerMethod());
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.headerCrc());
+        header.putInt((int) (zip64 ? ZIP64_LIMIT : entry.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_LIMIT : entry.uncompressedSize));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) extra.length);
+        header.put(entry.name);
+        header.put(extra);
+
+        out.ensureRoom(header.capacity());
+        int disk = out.disk();
+        long headerOffset = out.position();
+        out.write(header.array());
+        entry.data.copyTo(out);
+        centralRecords.write(centralRecord(entry, disk, headerOffset));
+        entriesWritten++;
+        if (entry.copied) {
+            copiedEntries++;
+        } else if (entry.method == STORED && !entry.directory) {
+            storedEntries++;
+        }
+    }
+
+    private byte[] localExtra(CompressedEntry entry, boolean zip64) {
+        ByteBuffer extra = littleEndian((zip64 ? 20 : 0) + (entry.encrypted ? 11 : 0));
+        if (zip64) {
+            // The local header always carries both sizes once it uses ZIP64
+            extra.putShort((short) ZIP64_EXTRA_ID);
+            extra.putShort((short) 16);
+            extra.putLong(entry.uncompressedSize);
+            extra.putLong(entry.compressedSize);
+        }
+        putAesExtra(extra, entry);
+        return extra.array();
+    }
+
+    private static void putAesExtra(ByteBuffer extra, CompressedEntry entry) {
+        if (entry.encrypted) {
+            extra.putShort((short) AES_EXTRA_ID);
+            extra.putShort((short) 7);
+            // AE-2: the CRC is left out, the authentication code covers the data instead
+            extra.putShort((short) 2);
+            extra.put((byte) 'A');
+            extra.put((byte) 'E');
+            extra.put((byte) AesKeyStrength.KEY_STRENGTH_256.getRawCode());
+            extra.putShort((short) entry.method);
+        }
+    }
+
+    /**
+     * The central directory record for an entry whose local header is at headerOffset on volume disk.
+     */
+    private static byte[] centralRecord(CompressedEntry entry, int disk, long headerOffset) {
+        boolean bigUncompressed = entry.uncompressedSize >= ZIP64_LIMIT;
+        boolean bigCompressed = entry.compressedSize >= ZIP64_LIMIT;
+        boolean bigOffset = headerOffset >= ZIP64_LIMIT;
+        int zip64Size = (bigUncompressed ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+        boolean zip64 = zip64Size > 0;
+        int extraLength = (zip64 ? 4 + zip64Size : 0) + (entry.encrypted ? 11 : 0);
+
+        ByteBuffer header = littleEndian(46 + entry.name.length + extraLength);
+        header.putInt(0x02014b50);
+        header.putShort((short) VERSION_AES);
+        header.putShort((short) versionNeeded(entry, zip64));
+        header.putShort((short) entry.flags());
+        header.putShort((short) entry.headerMethod());
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.headerCrc());
+        header.putInt((int) (bigCompressed ? ZIP64_LIMIT : entry.compressedSize));
+        header.putInt((int) (bigUncompressed ? ZIP64_LIMIT : entry.uncompressedSize));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) extraLength);
+        header.putShort((short) 0);
+        header.putShort((short) disk);
+        header.putShort((short) 0);
+        header.putInt(entry.directory ? DIRECTORY_ATTRIBUTE : 0);
+        header.putInt((int) (bigOffset ? ZIP64_LIMIT : headerOffset));
+        header.put(entry.name);
+        if (zip64) {
+            // Only the fields that overflowed, in this order
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) zip64Size);
+            if (bigUncompressed) {
+                header.putLong(entry.uncompressedSize);
+            }
+            if (bigCompressed) {
+                header.putLong(entry.compressedSize);
+            }
+            if (bigOffset) {
+                header.putLong(headerOffset);
+            }
+        }
+        putAesExtra(header, entry);
+        return header.array();
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        int centralDisk = out.disk();
+        long centralStart = out.position();
+        long centralSize = centralRecords.size();
+        int entriesOnDisk = 0;
+        // The records are read back one at a time, so that none of them straddles two volumes
+        try (InputStream records = centralRecords.openInput()) {
+            byte[] fixed = new byte[46];
+            for (int i = 0; i < entriesWritten; i++) {
+                readFully(records, fixed, 0, fixed.length);
+                ByteBuffer lengths = ByteBuffer.wrap(fixed).order(ByteOrder.LITTLE_ENDIAN);
+                int length = 46 + (lengths.getShort(28) & 0xFFFF) + (lengths.getShort(30) & 0xFFFF)
+                    + (lengths.getShort(32) & 0xFFFF);
+                byte[] record = Arrays.copyOf(fixed, length);
+                readFully(records, record, fixed.length, length - fixed.length);
+                int disk = out.disk();
+                out.ensureRoom(length);
+                if (i == 0) {
+                    centralDisk = out.disk();
+                    centralStart = out.position();
+                }
+                entriesOnDisk = out.disk() == disk ? entriesOnDisk + 1 : 1;
+                out.write(record);
+            }
+        }
+        int entries = entriesWritten;
+        boolean zip64 = entries >= ZIP64_ENTRY_LIMIT || centralStart >= ZIP64_LIMIT || centralSize >= ZIP64_LIMIT;
+
+        // The end records all go on the last volume
+        int recordsDisk = out.disk();
+        out.ensureRoom((zip64 ? 56 + 20 : 0) + 22);
+        if (out.disk() != recordsDisk) {
+            entriesOnDisk = 0;
+        }
+        int disk = out.disk();
+        if (zip64) {
+            long zip64EndOffset = out.position();
+            ByteBuffer zip64End = littleEndian(56 + 20);
+            zip64End.putInt(0x06064b50);
+            zip64End.putLong(44);
+            zip64End.putShort((short) VERSION_ZIP64);
+            zip64End.putShort((short) VERSION_ZIP64);
+            zip64End.putInt(disk);
+            zip64End.putInt(centralDisk);
+            zip64End.putLong(entriesOnDisk);
+            zip64End.putLong(entries);
+            zip64End.putLong(centralSize);
+            zip64End.putLong(centralStart);
+            // The locator that points back at it
+            zip64End.putInt(0x07064b50);
+            zip64End.putInt(disk);
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(disk + 1);
+            out.write(zip64End.array());
+        }
+
+        ByteBuffer end = littleEndian(22);
+        end.putInt(0x06054b50);
+        end.putShort((short) disk);
+        end.putShort((short) centralDisk);
+        end.putShort((short) Math.min(entriesOnDisk, ZIP64_ENTRY_LIMIT));
+        end.putShort((short) Math.min(entries, ZIP64_ENTRY_LIMIT));
+        end.putInt((int) Math.min(centralSize, ZIP64_LIMIT));
+        end.putInt((int) Math.min(centralStart, ZIP64_LIMIT));
+        end.putShort((short) 0);
+        out.write(end.array());
+    }
+
+    private static void readFully(InputStream in, byte[] bytes, int off, int len) throws IOException {
+        while (len > 0) {
+            int read = in.read(bytes, off, len);
+            if (read < 0) {
+                throw new EOFException("Central directory scratch data is truncated");
+            }
+            off += read;
+            len -= read;
+        }
+    }
+
+    private static int versionNeeded(CompressedEntry entry, boolean zip64) {
+        if (entry.encrypted) {
+            return VERSION_AES;
+        }
+        return zip64 ? VERSION_ZIP64 : VERSION_DEFAULT;
+    }
+
+    private static ByteBuffer littleEndian(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * An entry that has been compressed and is waiting for its turn to be written.
+     */
+    private static final class CompressedEntry {
+        final byte[] name;
+        final long dosTime;
+        final int method;
+        final boolean encrypted;
+        final boolean directory;
+        final EntryData data;
+        long crc;
+        long compressedSize;
+        long uncompressedSize;
+        boolean copied;
+
+        CompressedEntry(String name, long dosTime, int method, boolean encrypted, boolean directory, EntryData data) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime;
+            this.method = method;
+            this.encrypted = encrypted;
+            this.directory = directory;
+            this.data = data;
+        }
+
+        int flags() {
+            return UTF8_NAMES_FLAG | (encrypted ? ENCRYPTED_FLAG : 0);
+        }
+
+        int headerMethod() {
+            return encrypted ? AES_METHOD : method;
+        }
+
+        long headerCrc() {
+            return encrypted ? 0 : crc;
+        }
+
+        /**
+         * The compressed size without the salt, password verifier and authentication code AES adds.
+         */
+        long payloadSize() {
+            return encrypted ? compressedSize - AES_OVERHEAD : compressedSize;
+        }
+    }
+
+    /**
+     * Where an entry's bytes, compressed and encrypted as they go into the archive, are waiting.
+     */
+    private interface EntryData {
+        void copyTo(OutputStream target) throws IOException;
+
+        void discard();
+    }
+
+    /**
+     * An entry's bytes that are still in an older archive, from offset on for length bytes.
+     */
+    private static final class RawRange implements EntryData {
+        private final Path archive;
+        private final long offset;
+        private final long length;
+
+        RawRange(Path archive, long offset, long length) {
+            this.archive = archive;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void copyTo(OutputStream target) throws IOException {
+            try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                long position = offset;
+                long end = offset + length;
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Entry runs past the end of " + archive);
+                    }
+                    target.write(buffer.array(), 0, read);
+                    position += read;
+                }
+            }
+        }
+
+        @Override
+        public void discard() {
+            // Nothing was copied out of the archive
+        }
+    }
+
+    /**
+     * A stored entry's bytes, still in the file they come from. The CRC is checked again as they are copied, since
+     * the header with the one worked out earlier is already in the archive by then; a file that changed in between
+     * fails the archive rather than leaving an entry that doesn't match its header.
+     */
+    private static final class SourceFile implements EntryData {
+        private final Path file;
+        private final long crc;
+        private final long size;
+
+        SourceFile(Path file, long crc, long size) {
+            this.file = file;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        @Override
+        public void copyTo(OutputStream target) throws IOException {
+            CrcOutputStream copy = new CrcOutputStream(target);
+            try (InputStream in = Files.newInputStream(file)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                long remaining = size;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    copy.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                if (remaining > 0 || in.read() >= 0 || copy.crc.getValue() != crc) {
+                    throw new IOException(file + " changed while it was being archived");
+                }
+            }
+        }
+
+        @Override
+        public void discard() {
+            // Nothing was copied out of the file
+        }
+    }
+
+    /**
+     * This keeps an entry's compressed bytes in memory until there are too many, then moves them to a temp file.
+     */
+    private static final class SpillBuffer extends OutputStream implements EntryData {
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path spillFile;
+        private OutputStream spill;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            if (spill == null && memory.size() + len > SPILL_THRESHOLD) {
+                spillFile = Files.createTempFile("filex-zip-", ".part");
+                spill = new BufferedOutputStream(Files.newOutputStream(spillFile), COPY_BUFFER_SIZE);
+                memory.writeTo(spill);
+                memory = null;
+            }
+            if (spill != null) {
+                spill.write(bytes, off, len);
+            } else {
+                memory.write(bytes, off, len);
+            }
+            size += len;
+        }
+
+        long size() {
+            return size;
+        }
+
+        @Override
+        public void copyTo(OutputStream target) throws IOException {
+            if (spill == null) {
+                memory.writeTo(target);
+            } else {
+                spill.close();
+                Files.copy(spillFile, target);
+            }
+        }
+
+        /**
+         * This reads the bytes back; nothing more can be written afterwards.
+         */
+        InputStream openInput() throws IOException {
+            if (spill == null) {
+                return new ByteArrayInputStream(memory.toByteArray());
+            }
+            spill.close();
+            return new BufferedInputStream(Files.newInputStream(spillFile), COPY_BUFFER_SIZE);
+        }
+
+        @Override
+        public void discard() {
+            memory = null;
+            if (spillFile != null) {
+                try {
+                    spill.close();
+                    Files.deleteIfExists(spillFile);
+                } catch (IOException e) {
+                    System.err.println("Could not delete ZIP scratch file " + spillFile + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * This writes the archive, either to the target as it is, or as numbered volumes of at most splitSize bytes.
+     * Volumes are written as name.z01, name.z02...; the last one is renamed to the target when the archive is
+     * finished, since until then there is no telling which one is last. The first volume starts with the split
+     * archive signature, which is changed to the "only one segment" marker if everything fit into one volume.
+     */
+    private static final class VolumeOutputStream extends OutputStream {
+        private static final int SPLIT_SIGNATURE = 0x08074b50;
+        private static final int SINGLE_SEGMENT_SIGNATURE = 0x30304b50;
+        private static final int MAX_VOLUMES = 0xFFFF;
+
+        private final Path target;
+        private final long splitSize;
+        private OutputStream current;
+        private int disk;
+        private long position;
+
+        VolumeOutputStream(Path target, long splitSize) throws IOException {
+            this.target = target;
+            this.splitSize = splitSize;
+            open();
+            if (splitSize > 0) {
+                write(littleEndian(4).putInt(SPLIT_SIGNATURE).array());
+            }
+        }
+
+        private void open() throws IOException {
+            current = new BufferedOutputStream(Files.newOutputStream(volume(disk)), OUTPUT_BUFFER_SIZE);
+            position = 0;
+        }
+
+        private Path volume(int number) {
+            if (splitSize == 0) {
+                return target;
+            }
+            return volumeOf(target, number);
+        }
+
+        private static Path volumeOf(Path target, int number) {
+            String name = target.getFileName().toString();
+            String base = name.toLowerCase(Locale.ROOT).endsWith(".zip") ? name.substring(0, name.length() - 4) : name;
+            return target.resolveSibling(String.format("%s.z%02d", base, number + 1));
+        }
+
+        int disk() {
+            return disk;
+        }
+
+        /**
+         * @return Where the next byte goes, counted from the start of the current volume.
+         */
+        long position() {
+            return position;
+        }
+
+        /**
+         * This starts a new volume if length bytes don't fit into the current one, so a header isn't split.
+         */
+        void ensureRoom(long length) throws IOException {
+            long volumeStart = disk == 0 ? 4 : 0;
+            if (splitSize > 0 && position + length > splitSize && position > volumeStart) {
+                nextVolume();
+            }
+        }
+
+        private void nextVolume() throws IOException {
+            if (disk + 1 >= MAX_VOLUMES) {
+                throw new IOException("The archive needs more than " + MAX_VOLUMES + " volumes; use a bigger split size");
+            }
+            current.close();
+            disk++;
+            open();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                if (splitSize > 0 && position >= splitSize) {
+                    nextVolume();
+                }
+                int chunk = splitSize > 0 ? (int) Math.min(len, splitSize - position) : len;
+                current.write(bytes, off, chunk);
+                position += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        void finish() throws IOException {
+            current.close();
+            if (splitSize > 0) {
+                Files.move(volume(disk), target, StandardCopyOption.REPLACE_EXISTING);
+                if (disk == 0) {
+                    try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                        channel.write(littleEndian(4).putInt(SINGLE_SEGMENT_SIGNATURE).flip(), 0);
+                    }
+                }
+            }
+            // Volumes left over from an earlier, bigger split of the same archive would be mistaken for part of it
+            for (int stale = splitSize > 0 ? disk + 1 : 0; Files.deleteIfExists(volumeOf(target, stale)); stale++) {
+                // Keep going until the numbering runs out
+            }
+        }
+
+        /**
+         * This closes and deletes what has been written, for an archive that won't be finished.
+         */
+        void delete() {
+            try {
+                current.close();
+            } catch (IOException e) {
+                System.err.println("Could not close incomplete archive " + target + ": " + e.getMessage());
+            }
+            for (int number = 0; number <= disk; number++) {
+                try {
+                    Files.deleteIfExists(volume(number));
+                } catch (IOException e) {
+                    System.err.println("Could not remove incomplete archive " + volume(number) + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * This passes bytes through while keeping their CRC-32 and count.
+     */
+    private static final class CrcOutputStream extends OutputStream {
+        private final OutputStream target;
+        final CRC32 crc = new CRC32();
+        long count;
+
+        CrcOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            crc.update(b);
+            count++;
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            crc.update(bytes, off, len);
+            count += len;
+            target.write(bytes, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+    }
+
+    /**
+     * This encrypts an entry's compressed bytes the WinZip AES way: the salt and password verifier first, then the
+     * data encrypted with AES in counter mode, then the 10 byte authentication code.
+     * WinZipAes encrypts in place, so the bytes are copied into a buffer of its own first.
+     */
+    private static final class AesOutputStream extends OutputStream {
+        private final OutputStream target;
+        private final WinZipAes aes;
+        private final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        AesOutputStream(OutputStream target, char[] password) throws IOException {
+            this.target = target;
+            this.aes = WinZipAes.forEncryption(password, AesKeyStrength.KEY_STRENGTH_256.getKeyLength());
+            target.write(aes.getSalt());
+            target.write(aes.getPasswordVerifier());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, buffer.length);
+                System.arraycopy(bytes, off, buffer, 0, chunk);
+                aes.encrypt(buffer, 0, chunk);
+                target.write(buffer, 0, chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        void finish() throws IOException {
+            target.write(aes.getMac());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package handlers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Locale;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import diagnostics.TarEvent;
+
+/**
+ * This writes tarballs, compressed with gzip or zstd, for the Linux machines that would rather have those than ZIPs.
+ * The folder is walked lazily by ArchiveTreeWalker and streamed straight into the tar, so the first bytes are on disk
+ * right away and nothing grows with the number of files. Compression runs on every core: gzip in independent blocks
+ * through ParallelGzipOutputStream, pigz-style, and zstd with its own worker threads.
+ * The tar is POSIX (pax) format, so long names, big files and symbolic links all survive, and permissions are kept
+ * where the file system has them.
+ */
+public class TarHandler {
+
+    /**
+     * Told how far an archive has got, a few times a second and once at the end. That last call, made after the
+     * archive is finished, has the totals: every file that went in and the bytes read from them.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int filesArchived, long bytesArchived);
+    }
+
+    /**
+     * How the tar is compressed, with the file extension that goes with it.
+     */
+    public enum Compression {
+        GZIP(".tar.gz"),
+        ZSTD(".tar.zst");
+
+        private final String extension;
+
+        Compression(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * How hard to compress, as a choice that means the same for both compressors: the gzip and zstd levels behind
+     * each are the ones their command line tools use for fast, default and best.
+     */
+    public enum Level {
+        FASTEST("Fastest", 1, 1),
+        BALANCED("Balanced", 6, 3),
+        SMALLEST("Smallest", 9, 19);
+
+        private final String label;
+        private final int gzipLevel;
+        private final int zstdLevel;
+
+        Level(String label, int gzipLevel, int zstdLevel) {
+            this.label = label;
+            this.gzipLevel = gzipLevel;
+            this.zstdLevel = zstdLevel;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return The level with this label, or BALANCED if there is none.
+         */
+        public static Level fromLabel(String label) {
+            for (Level level : values()) {
+                if (level.label.equals(label)) {
+                    return level;
+                }
+            }
+            return BALANCED;
+        }
+    }
+
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 200;
+
+    /**
+     * This creates a compressed tarball of a folder. A half-written archive is deleted if anything fails.
+     * @param sourceFolder The folder to archive; it goes in under its own name.
+     * @param targetFile The archive to write; replaced if it exists.
+     * @param compression GZIP or ZSTD.
+     * @param level How hard to compress.
+     * @param options Which files to include; a split size is ignored, tarballs aren't split.
+     * @param listener Told about progress, or null.
+     * @return The number of files archived.
+     * @throws IOException If a file can't be read or the archive can't be written.
+     */
+    public int createTar(File sourceFolder, File targetFile, Compression compression, Level level, ZipOptions options,
+                         ProgressListener listener) throws IOException {
+        TarEvent event = new TarEvent();
+        event.begin();
+        int threads = ParallelZipWriter.defaultThreads();
+        Progress progress = new Progress(listener);
+        String errorMessage = null;
+        try {
+            try (TarArchiveOutputStream tar = new TarArchiveOutputStream(compressedOutput(targetFile.toPath(),
+                    compression, level, threads))) {
+                tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                tar.setAddPaxHeadersForNonAsciiNames(true);
+                ArchiveTreeWalker.walk(sourceFolder.toPath(), options, true, new ArchiveTreeWalker.Visitor() {
+                    @Override
+                    public void directory(String name, Path dir, BasicFileAttributes attrs) throws IOException {
+                        tar.putArchiveEntry(entry(name + "/", TarConstants.LF_DIR, dir, attrs));
+                        tar.closeArchiveEntry();
+                    }
+
+                    @Override
+                    public void file(String name, Path file, BasicFileAttributes attrs) throws IOException {
+                        if (attrs.isSymbolicLink()) {
+                            TarArchiveEntry link = entry(name, TarConstants.LF_SYMLINK, file, attrs);
+                            link.setLinkName(Files.readSymbolicLink(file).toString());
+                            tar.putArchiveEntry(link);
+                            tar.closeArchiveEntry();
+                            return;
+                        }
+                        TarArchiveEntry entry = entry(name, TarConstants.LF_NORMAL, file, attrs);
+                        entry.setSize(attrs.size());
+                        tar.putArchiveEntry(entry);
+                        long copied = Files.copy(file, tar);
+                        tar.closeArchiveEntry();
+                        progress.fileDone(copied);
+                    }
+                });
+                tar.finish();
+            }
+            progress.report();
+            return progress.files;
+        } catch (IOException | RuntimeException e) {
+            errorMessage = e.getMessage();
+            try {
+                Files.deleteIfExists(targetFile.toPath());
+            } catch (IOException deleteError) {
+                System.err.println("Could not remove incomplete archive " + targetFile + ": " + deleteError.getMessage());
+            }
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sourceFolder = sourceFolder.getAbsolutePath();
+                event.compression = compression.name().toLowerCase(Locale.ROOT);
+                event.level = level.getLabel();
+                event.inputBytes = progress.bytes;
+                event.archiveBytes = targetFile.length();
+                event.files = progress.files;
+                event.threads = threads;
+                event.outcome = errorMessage == null ? "SUCCESS" : "FAILED";
+                event.errorMessage = errorMessage;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * This makes an entry from the attributes the walk already read, plus the permissions where the file system has
+     * them, rather than letting TarArchiveEntry read everything again (it would also add a libarchive creation time
+     * header that GNU tar complains about).
+     */
+    private static TarArchiveEntry entry(String name, byte type, Path path, BasicFileAttributes attrs) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name, type);
+        entry.setModTime(attrs.lastModifiedTime());
+        if (type == TarConstants.LF_SYMLINK) {
+            // A link's own permissions mean nothing; tar shows them as rwxrwxrwx
+            entry.setMode((entry.getMode() & ~0777) | 0777);
+        } else {
+            try {
+                int permissions = 0;
+                for (PosixFilePermission permission : Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS)) {
+                    permissions |= 0400 >> permission.ordinal();
+                }
+                // The file type bits stay as TarArchiveEntry set them; only the permissions come from the file
+                entry.setMode((entry.getMode() & ~0777) | permissions);
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, like on Windows; the defaults (rw-r--r--, rwxr-xr-x for folders) stay
+            }
+        }
+        return entry;
+    }
+
+    private static OutputStream compressedOutput(Path target, Compression compression, Level level, int threads)
+            throws IOException {
+        OutputStream file = new BufferedOutputStream(Files.newOutputStream(target), OUTPUT_BUFFER_SIZE);
+        try {
+            if (compression == Compression.ZSTD) {
+                ZstdOutputStream zstd = new ZstdOutputStream(file, level.zstdLevel);
+                zstd.setChecksum(true);
+                zstd.setWorkers(threads);
+                return zstd;
+            }
+            return new ParallelGzipOutputStream(file, level.gzipLevel, threads);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            file.close();
+            if (e instanceof LinkageError) {
+                // zstd-jni has no native library for this platform
+                throw new IOException("zstd is not available on this system: " + e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Counts what has been archived, and passes it on to the listener no more than a few times a second.
+     */
+    private static final class Progress {
+        private final ProgressListener listener;
+        private int files;
+        private long bytes;
+        private long lastReport;
+
+        Progress(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        void fileDone(long size) {
+            files++;
+            bytes += size;
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                lastReport = now;
+                report();
+            }
+        }
+
+        void report() {
+            if (listener != null) {
+                listener.onProgress(files, bytes);
+            }
+        }
+    }
+}
@@ -2,36 +2,471 @@ package handlers;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
+import diagnostics.UnzipEvent;
+import diagnostics.ZipEvent;
 import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.model.enums.EncryptionMethod; //NOTE TO SELF, CAN IMPORT ALL USING '*', DOES NOT WORK FOR SOME REASON
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
 
 /**
- * This handles the ZIP archive creation, including the password protection.
+ * This handles the ZIP archive creation and extraction, including the password protection.
  */
 public class ZipHandler {
 
+    /**
+     * Told how far an archive has got, a few times a second and once at the end. That last call, made after the
+     * archive is finished, has the totals: every file that went in and the size of the files they came from.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int filesArchived, long bytesArchived);
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 200;
+
     /**
      * This creates a ZIP archive from a source folder, with optional password protection.
+     * The files are compressed in parallel by ParallelZipWriter, one file per core at a time; zip4j's addFolder
+     * deflated them one after another on a single thread. Files that are already compressed are stored.
      * @param sourceFolder The folder to be archived.
      * @param targetZipFile The output ZIP file.
      * @param password Optional password for encryption. Can be null or empty for no encryption.
      * @throws IOException If an I/O error occurs during zipping.
      */
     public void zipFolder(File sourceFolder, File targetZipFile, String password) throws IOException {
-        ZipFile zipFile = new ZipFile(targetZipFile);
-        ZipParameters parameters = new ZipParameters();
+        zipFolder(sourceFolder, targetZipFile, password, ZipOptions.ALL, null);
+    }
+
+    /**
+     * The same, zipping only the files options lets through, and splitting the archive into volumes if it asks for
+     * that. The folder is walked as it is zipped, so the first entries are written while the walk is still going,
+     * and memory doesn't grow with the number of files.
+     * @param options Which files to include, and the volume size.
+     * @param listener Told about progress, or null.
+     */
+    public void zipFolder(File sourceFolder, File targetZipFile, String password, ZipOptions options,
+                          ProgressListener listener) throws IOException {
+        ZipEvent event = new ZipEvent();
+        event.begin();
+        boolean encrypted = password != null && !password.trim().isEmpty();
+        int threads = ParallelZipWriter.defaultThreads();
+        String errorMessage = null;
+        ParallelZipWriter writer = null;
+        try {
+            // Thid sets encryption if a password is provided
+            writer = newWriter(targetZipFile, password, threads, options);
+            ParallelZipWriter zip = writer;
+            // Already compressed files (photos, videos, Office documents...) are stored as they are
+            Progress progress = new Progress(listener);
+            addTree(writer, sourceFolder.toPath(), options, progress, (name, file, lastModified) ->
+                zip.addFile(name, file, lastModified, ParallelZipWriter.AUTO));
+            writer.finish();
+            progress.report();
+        } catch (IOException | RuntimeException e) {
+            errorMessage = e.getMessage();
+            if (writer != null) {
+                writer.abort();
+            }
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sourceFolder = sourceFolder.getAbsolutePath();
+                event.archiveBytes = targetZipFile.length();
+                event.entries = writer == null ? 0 : writer.getEntriesWritten();
+                event.threads = threads;
+                event.storedEntries = writer == null ? 0 : writer.getStoredEntries();
+                event.copiedEntries = 0;
+                event.volumes = writer == null ? 0 : writer.getVolumes();
+                event.encrypted = encrypted;
+                event.outcome = errorMessage == null ? "SUCCESS" : "FAILED";
+                event.errorMessage = errorMessage;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * This converts the files in a folder to another format and packs the results into a ZIP in one go, for the
+     * common "convert these and send them as one archive" job. Each converter writes straight into its archive entry
+     * on one of ParallelZipWriter's workers, so the converted files never exist on disk: small outputs stay in memory
+     * and big ones spill to a temp file until it is their turn to be written. Compared with converting into a folder
+     * and zipping that, the outputs are written once instead of written and read back.
+     * Files that have no converter to targetFormat, are already in it, or whose converted name is taken by a file
+     * next to them or by another file converted before them (photo.jpg and photo.png both to WEBP) go in as they are.
+     * @param sourceFolder The folder to convert and archive.
+     * @param targetFormat The format to convert to, e.g. "PDF".
+     * @param targetZipFile The output ZIP file.
+     * @param password Optional password for encryption. Can be null or empty for no encryption.
+     * @return How many files were converted.
+     * @throws IOException If a file can't be read or converted, or the archive can't be written.
+     */
+    public int convertAndZip(File sourceFolder, String targetFormat, File targetZipFile, String password) throws IOException {
+        return convertAndZip(sourceFolder, targetFormat, targetZipFile, password, ZipOptions.ALL, null);
+    }
+
+    /**
+     * The same, converting and packing only the files options lets through, into volumes if it asks for that.
+     * The bytes listener is told about are those of the files before they were converted.
+     */
+    public int convertAndZip(File sourceFolder, String targetFormat, File targetZipFile, String password,
+                             ZipOptions options, ProgressListener listener) throws IOException {
+        ZipEvent event = new ZipEvent();
+        event.begin();
+        boolean encrypted = password != null && !password.trim().isEmpty();
+        int threads = ParallelZipWriter.defaultThreads();
+        FileConversionHandler converter = new FileConversionHandler();
+        CompressionAdvisor advisor = new CompressionAdvisor();
+        String extension = "." + targetFormat.toLowerCase(Locale.ROOT);
+        int[] converted = new int[1];
+        String errorMessage = null;
+        ParallelZipWriter writer = null;
+        try {
+            writer = newWriter(targetZipFile, password, threads, options);
+            ParallelZipWriter zip = writer;
+            // Converted entry names handed out so far, case-folded, so photo.jpg and photo.png can't both be photo.webp
+            Set<String> convertedNames = new HashSet<>();
+            Progress progress = new Progress(listener);
+            addTree(writer, sourceFolder.toPath(), options, progress, (name, file, lastModified) -> {
+                String fileName = file.getFileName().toString();
+                String convertedName = baseName(fileName) + extension;
+                String entryName = name.substring(0, name.length() - fileName.length()) + convertedName;
+                if (!FileConversionHandler.canConvert(file.toFile(), targetFormat)
+                        || Files.exists(file.resolveSibling(convertedName))
+                        || !convertedNames.add(entryName.toLowerCase(Locale.ROOT))) {
+                    zip.addFile(name, file, lastModified, ParallelZipWriter.AUTO);
+                    return;
+                }
+                zip.addEntry(entryName, System.currentTimeMillis(), advisor.methodForName(convertedName),
+                    out -> converter.convertTo(file.toFile(), targetFormat, out));
+                converted[0]++;
+            });
+            writer.finish();
+            progress.report();
+            return converted[0];
+        } catch (IOException | RuntimeException e) {
+            errorMessage = e.getMessage();
+            if (writer != null) {
+                writer.abort();
+            }
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sourceFolder = sourceFolder.getAbsolutePath();
+                event.archiveBytes = targetZipFile.length();
+                event.entries = writer == null ? 0 : writer.getEntriesWritten();
+                event.threads = threads;
+                event.storedEntries = writer == null ? 0 : writer.getStoredEntries();
+                event.convertedEntries = converted[0];
+                event.volumes = writer == null ? 0 : writer.getVolumes();
+                event.encrypted = encrypted;
+                event.outcome = errorMessage == null ? "SUCCESS" : "FAILED";
+                event.errorMessage = errorMessage;
+                event.commit();
+            }
+        }
+    }
+
+    private static ParallelZipWriter newWriter(File targetZipFile, String password, int threads, ZipOptions options)
+            throws IOException {
+        boolean encrypted = password != null && !password.trim().isEmpty();
+        return new ParallelZipWriter(targetZipFile.toPath(), encrypted ? password.toCharArray() : null, threads,
+            ParallelZipWriter.DEFAULT_LEVEL, options.getSplitSize());
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+
+    /**
+     * This brings an existing ZIP of a folder up to date, for archives that are rebuilt again and again from a folder
+     * where little changes between runs, like a nightly snapshot.
+     * The existing archive's central directory is read first. Files whose size and modification time (or failing
+     * that, CRC) match their old entry are copied over compressed as they are; only new and changed files are
+     * compressed, and files that are gone are simply left out. The new archive is written to a temp file next to the
+     * old one and moved over it at the end, so the old one stays intact if anything fails.
+     * If there is no archive yet, or it can't be read or is split into volumes, it is created from scratch like
+     * zipFolder does.
+     * @param sourceFolder The folder to be archived.
+     * @param targetZipFile The ZIP file to update.
+     * @param password Optional password for encryption. Encrypted entries are only reused if it is the same one.
+     * @return How many entries were copied from the old archive rather than compressed again.
+     * @throws IOException If an I/O error occurs during zipping.
+     */
+    public int updateZip(File sourceFolder, File targetZipFile, String password) throws IOException {
+        return updateZip(sourceFolder, targetZipFile, password, ZipOptions.ALL, null);
+    }
 
-        // Thid sets encryption if a password is provided
-        if (password != null && !password.trim().isEmpty()) {
-            parameters.setEncryptFiles(true);
-            parameters.setEncryptionMethod(EncryptionMethod.AES);
-            zipFile.setPassword(password.toCharArray());
+    /**
+     * The same, with only the files options lets through in the new archive. An update is always written as a
+     * single archive, since entries are copied from the old one by their offset; asking for volumes rebuilds it
+     * like zipFolder instead. The bytes reported to listener include the files whose entries were reused.
+     */
+    public int updateZip(File sourceFolder, File targetZipFile, String password, ZipOptions options,
+                         ProgressListener listener) throws IOException {
+        Path target = targetZipFile.toPath().toAbsolutePath();
+        Map<String, FileHeader> previous = options.getSplitSize() > 0 ? null : readEntries(target);
+        if (previous == null) {
+            zipFolder(sourceFolder, targetZipFile, password, options, listener);
+            return 0;
+        }
+        boolean encrypted = password != null && !password.trim().isEmpty();
+        try {
+            if (encrypted && !passwordMatches(target, previous, password.toCharArray())) {
+                // Entries encrypted with another password can't go into this archive as they are
+                previous.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not check the password of " + target + ", compressing everything again: "
+                + e.getMessage());
+            previous.clear();
         }
 
-        // THis will add the folder to the zip file
-        zipFile.addFolder(sourceFolder, parameters);
+        ZipEvent event = new ZipEvent();
+        event.begin();
+        int threads = ParallelZipWriter.defaultThreads();
+        Path temp = null;
+        String errorMessage = null;
+        ParallelZipWriter writer = null;
+        try {
+            // A name of its own, so a file the user happens to have called name.zip.tmp is never touched
+            temp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+            writer = new ParallelZipWriter(temp, encrypted ? password.toCharArray() : null, threads);
+            ParallelZipWriter zip = writer;
+            Progress progress = new Progress(listener);
+            addTree(writer, sourceFolder.toPath(), options, progress, (name, file, lastModified) ->
+                zip.addFileOrCopy(name, file, lastModified, target, previous.get(name)));
+            writer.finish();
+            progress.report();
+            replaceArchive(temp, target);
+            return writer.getCopiedEntries();
+        } catch (IOException | RuntimeException e) {
+            errorMessage = e.getMessage();
+            if (writer != null) {
+                writer.abort();
+            }
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sourceFolder = sourceFolder.getAbsolutePath();
+                event.archiveBytes = targetZipFile.length();
+                event.entries = writer == null ? 0 : writer.getEntriesWritten();
+                event.threads = threads;
+                event.storedEntries = writer == null ? 0 : writer.getStoredEntries();
+                event.copiedEntries = writer == null ? 0 : writer.getCopiedEntries();
+                event.volumes = writer == null ? 0 : writer.getVolumes();
+                event.encrypted = encrypted;
+                event.outcome = errorMessage == null ? "SUCCESS" : "FAILED";
+                event.errorMessage = errorMessage;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * This moves the finished update over the old archive, atomically where the file system can. The temp file was
+     * created owner-only, so it takes the old archive's permissions first.
+     */
+    private static void replaceArchive(Path temp, Path target) throws IOException {
+        try {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, like on Windows; there is nothing to carry over
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return The archive's file entries by name, in central directory order, or null if there is no archive or it
+     * can't be read.
+     */
+    private Map<String, FileHeader> readEntries(Path archive) {
+        if (!Files.isRegularFile(archive)) {
+            return null;
+        }
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            if (zipFile.isSplitArchive()) {
+                // Offsets in a split archive are relative to a volume, so its entries can't be copied by offset
+                return null;
+            }
+            Map<String, FileHeader> entries = new LinkedHashMap<>();
+            for (FileHeader header : zipFile.getFileHeaders()) {
+                if (!header.isDirectory()) {
+                    entries.put(header.getFileName(), header);
+                }
+            }
+            return entries;
+        } catch (IOException e) {
+            System.err.println("Could not read existing archive " + archive + ", recreating it: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This checks the password against the verifier stored with the first AES entry in the central directory (entries
+     * keeps that order), so the same archive always gets the same answer.
+     * @return true if it matches, or if no entry is AES encrypted.
+     * @throws IOException If the entry's header can't be read, or its data ends before the salt and verifier do.
+     */
+    private boolean passwordMatches(Path archive, Map<String, FileHeader> entries, char[] password) throws IOException {
+        for (FileHeader header : entries.values()) {
+            if (header.isEncrypted() && header.getAesExtraDataRecord() != null) {
+                AesKeyStrength strength = header.getAesExtraDataRecord().getAesKeyStrength();
+                int saltLength = strength.getSaltLength();
+                if (header.getCompressedSize() < saltLength + WinZipAes.PASSWORD_VERIFIER_SIZE) {
+                    throw new IOException("AES entry " + header.getFileName() + " is too short for its salt and verifier");
+                }
+                ByteBuffer start = ByteBuffer.allocate(saltLength + WinZipAes.PASSWORD_VERIFIER_SIZE);
+                try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+                    long position = ParallelZipWriter.dataOffset(channel, header);
+                    while (start.hasRemaining()) {
+                        if (channel.read(start, position + start.position()) < 0) {
+                            throw new IOException("Truncated AES header for " + header.getFileName());
+                        }
+                    }
+                }
+                byte[] salt = new byte[saltLength];
+                byte[] verifier = new byte[WinZipAes.PASSWORD_VERIFIER_SIZE];
+                start.flip();
+                start.get(salt).get(verifier);
+                return WinZipAes.forDecryption(password, salt, strength.getKeyLength()).matchesPasswordVerifier(verifier);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * How addTree puts each file into the archive.
+     */
+    @FunctionalInterface
+    private interface FileAdder {
+        void add(String name, Path file, long lastModified) throws IOException;
+    }
+
+    /**
+     * This adds a folder and everything in it under the folder's own name, the way zip4j's addFolder lays it out.
+     * A single file is added on its own. Folders are added here; each file is handed to adder and counted in
+     * progress. ArchiveTreeWalker does the walking and the filtering.
+     */
+    private void addTree(ParallelZipWriter writer, Path source, ZipOptions options, Progress progress, FileAdder adder)
+            throws IOException {
+        ArchiveTreeWalker.walk(source, options, false, new ArchiveTreeWalker.Visitor() {
+            @Override
+            public void directory(String name, Path dir, BasicFileAttributes attrs) throws IOException {
+                writer.addDirectory(name, attrs.lastModifiedTime().toMillis());
+            }
+
+            @Override
+            public void file(String name, Path file, BasicFileAttributes attrs) throws IOException {
+                adder.add(name, file, attrs.lastModifiedTime().toMillis());
+                progress.fileDone(attrs.size());
+            }
+        });
+    }
+
+    /**
+     * Counts the files handed to the writer, and passes it on to the listener no more than a few times a second.
+     */
+    private static final class Progress {
+        private final ProgressListener listener;
+        private int files;
+        private long bytes;
+        private long lastReport;
+
+        Progress(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        void fileDone(long size) {
+            files++;
+            bytes += size;
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                lastReport = now;
+                report();
+            }
+        }
+
+        void report() {
+            if (listener != null) {
+                listener.onProgress(files, bytes);
+            }
+        }
+    }
+
+    /**
+     * This extracts a ZIP archive into a folder, with the entries inflated and decrypted in parallel by
+     * ParallelZipExtractor. Archives that try to write outside the folder, or look like zip bombs, are refused before
+     * anything is written.
+     * @param zipFile The archive to extract.
+     * @param destinationFolder The folder to extract into; created if it doesn't exist.
+     * @param password The password if the archive is encrypted. Can be null or empty otherwise.
+     * @param overwriteCheck Asked before files already in the folder are replaced, or null to just replace them.
+     * @param listener Told about progress, or null.
+     * @return The number of files extracted, 0 if overwriteCheck said no.
+     * @throws IOException If the archive can't be read, is refused, has the wrong password or is corrupt.
+     */
+    public int extractZip(File zipFile, File destinationFolder, String password,
+                          ParallelZipExtractor.OverwriteCheck overwriteCheck,
+                          ParallelZipExtractor.ProgressListener listener) throws IOException {
+        UnzipEvent event = new UnzipEvent();
+        event.begin();
+        boolean encrypted = password != null && !password.isEmpty();
+        int threads = ParallelZipWriter.defaultThreads();
+        long[] extractedBytes = new long[1];
+        String errorMessage = null;
+        int files = 0;
+        try {
+            ParallelZipExtractor extractor = new ParallelZipExtractor(zipFile.toPath(),
+                encrypted ? password.toCharArray() : null, threads);
+            files = extractor.extractTo(destinationFolder.toPath(), overwriteCheck, (done, total) -> {
+                extractedBytes[0] = done;
+                if (listener != null) {
+                    listener.onProgress(done, total);
+                }
+            });
+            return files;
+        } catch (IOException e) {
+            errorMessage = e.getMessage();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.archive = zipFile.getAbsolutePath();
+                event.archiveBytes = zipFile.length();
+                event.extractedBytes = extractedBytes[0];
+                event.files = files;
+                event.threads = threads;
+                event.encrypted = encrypted;
+                event.outcome = errorMessage == null ? "SUCCESS" : "FAILED";
+                event.errorMessage = errorMessage;
+                event.commit();
+            }
+        }
     }
 
     /**
@@ -43,8 +478,15 @@ public class ZipHandler {
      * @return true if ZIP creation was successful, false otherwise.
      */
     public boolean createZip(File sourceFolder, File targetZipFile, String password) {
+        return createZip(sourceFolder, targetZipFile, password, null);
+    }
+
+    /**
+     * The same, telling listener about progress.
+     */
+    public boolean createZip(File sourceFolder, File targetZipFile, String password, ProgressListener listener) {
         try {
-            zipFolder(sourceFolder, targetZipFile, password);
+            zipFolder(sourceFolder, targetZipFile, password, ZipOptions.ALL, listener);
             return true;
         } catch (IOException e) {
             System.err.println("ZIP creation failed: " + e.getMessage());
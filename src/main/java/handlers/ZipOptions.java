@@ -0,0 +1,119 @@
+package handlers;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This describes which files of a folder go into a ZIP, and whether the ZIP is split into volumes.
+ * Include and exclude patterns are globs, like "*.pdf" or "build/**". A pattern without a '/' is matched against the
+ * file or folder name wherever it is; one with a '/' against the path relative to the folder being zipped, with '/'
+ * separators. Excluded folders are skipped whole, without walking into them.
+ */
+public final class ZipOptions {
+
+    /**
+     * Every file, in one archive.
+     */
+    public static final ZipOptions ALL = new ZipOptions(List.of(), List.of(), 0);
+
+    /**
+     * The smallest volume size allowed; zip4j and 7-Zip won't open volumes smaller than this.
+     */
+    public static final long MIN_SPLIT_SIZE = 64 * 1024;
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final List<PathMatcher> includeMatchers;
+    private final List<PathMatcher> excludeMatchers;
+    private final long splitSize;
+
+    /**
+     * @param includes Only files matching one of these go in; empty for all files.
+     * @param excludes Files and folders matching one of these are left out, even if they match an include.
+     * @param splitSize The size of each volume in bytes, or 0 for a single archive.
+     */
+    public ZipOptions(List<String> includes, List<String> excludes, long splitSize) {
+        if (splitSize != 0 && splitSize < MIN_SPLIT_SIZE) {
+            throw new IllegalArgumentException("Volumes must be at least " + MIN_SPLIT_SIZE / 1024 + " KB");
+        }
+        this.includes = List.copyOf(includes);
+        this.excludes = List.copyOf(excludes);
+        this.includeMatchers = matchers(includes);
+        this.excludeMatchers = matchers(excludes);
+        this.splitSize = splitSize;
+    }
+
+    /**
+     * This splits a comma separated list of patterns, as typed into a text field.
+     */
+    public static List<String> parsePatterns(String text) {
+        List<String> patterns = new ArrayList<>();
+        if (text != null) {
+            for (String pattern : text.split(",")) {
+                if (!pattern.trim().isEmpty()) {
+                    patterns.add(pattern.trim());
+                }
+            }
+        }
+        return patterns;
+    }
+
+    private static List<PathMatcher> matchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        return matchers;
+    }
+
+    /**
+     * @param relative The file's path relative to the folder being zipped.
+     * @return Whether the file goes into the archive.
+     */
+    public boolean includesFile(Path relative) {
+        if (matchesAny(excludeMatchers, excludes, relative)) {
+            return false;
+        }
+        return includeMatchers.isEmpty() || matchesAny(includeMatchers, includes, relative);
+    }
+
+    /**
+     * @param relative The folder's path relative to the folder being zipped.
+     * @return Whether to walk into the folder at all.
+     */
+    public boolean includesDirectory(Path relative) {
+        return !matchesAny(excludeMatchers, excludes, relative);
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, List<String> patterns, Path relative) {
+        for (int i = 0; i < matchers.size(); i++) {
+            Path subject = patterns.get(i).contains("/") ? relative : relative.getFileName();
+            if (subject != null && matchers.get(i).matches(subject)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether some files may be left out, in which case folders are only added once something in them is.
+     */
+    public boolean hasIncludes() {
+        return !includeMatchers.isEmpty();
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public long getSplitSize() {
+        return splitSize;
+    }
+}
@@ -1,6 +1,8 @@
 package models;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * tHIS model is what RespRESTNS A SINGLE FILE CONVERSION RECORD.
@@ -14,6 +16,14 @@ public class ConversionRecord {
     private String targetFormat;
     private boolean success;
     private LocalDateTime timestamp;
+    // The timestamp exactly as the database stores it, in epoch millis; null for a record that wasn't read from it.
+    // A local date-time can't always be turned back into this: the repeated hour when the clocks go back is ambiguous
+    private Long timestampMillis;
+    // These are null for records saved before they were tracked, or when they couldn't be measured
+    private Long durationMs;
+    private Long inputBytes;
+    private Long outputBytes;
+    private String errorMessage;
 
     public ConversionRecord(String sourcePath, String targetPath, String sourceFormat, String targetFormat, boolean success) {
         this.sourcePath = sourcePath;
@@ -40,7 +50,16 @@ public class ConversionRecord {
         this.sourceFormat = sourceFormat;
         this.targetFormat = targetFormat;
         this.success = success;
-        this.timestamp = LocalDateTime.ofEpochSecond(timestamp / 1000, 0, java.time.ZoneOffset.UTC);
+        this.timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    public ConversionRecord(int id, String sourcePath, String targetPath, String sourceFormat, String targetFormat, boolean success, LocalDateTime timestamp,
+                            Long durationMs, Long inputBytes, Long outputBytes, String errorMessage) {
+        this(id, sourcePath, targetPath, sourceFormat, targetFormat, success, timestamp);
+        this.durationMs = durationMs;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.errorMessage = errorMessage;
     }
 
     // My getters
@@ -72,6 +91,26 @@ public class ConversionRecord {
         return timestamp;
     }
 
+    public Long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Long getDurationMs() {
+        return durationMs;
+    }
+
+    public Long getInputBytes() {
+        return inputBytes;
+    }
+
+    public Long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
     // My setters (although, i did find out they were not needed(cause of immutability needs), I am going to keep them for future use)
     public void setId(int id) {
         this.id = id;
@@ -100,4 +139,24 @@ public class ConversionRecord {
     public void setTimestamp(LocalDateTime timestamp) {
         this.timestamp = timestamp;
     }
+
+    public void setTimestampMillis(Long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
+
+    public void setDurationMs(Long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public void setInputBytes(Long inputBytes) {
+        this.inputBytes = inputBytes;
+    }
+
+    public void setOutputBytes(Long outputBytes) {
+        this.outputBytes = outputBytes;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
 }
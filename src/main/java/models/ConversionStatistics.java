@@ -0,0 +1,77 @@
+package models;
+
+import java.time.LocalDate;
+
+/**
+ * This model is one line of the conversion statistics: the totals for a format pair, either for a single day or
+ * summed over a whole period (then the day is null). They come from the daily rollups, never from the raw history.
+ */
+public class ConversionStatistics {
+    private final LocalDate day;
+    private final String sourceFormat;
+    private final String targetFormat;
+    private final long conversions;
+    private final long failures;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final long durationMs;
+
+    public ConversionStatistics(LocalDate day, String sourceFormat, String targetFormat, long conversions, long failures,
+                                long inputBytes, long outputBytes, long durationMs) {
+        this.day = day;
+        this.sourceFormat = sourceFormat;
+        this.targetFormat = targetFormat;
+        this.conversions = conversions;
+        this.failures = failures;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.durationMs = durationMs;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public String getSourceFormat() {
+        return sourceFormat;
+    }
+
+    public String getTargetFormat() {
+        return targetFormat;
+    }
+
+    public long getConversions() {
+        return conversions;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * @return The share of conversions that failed, from 0 to 1.
+     */
+    public double getFailureRate() {
+        return conversions == 0 ? 0 : (double) failures / conversions;
+    }
+
+    /**
+     * @return The average time per conversion in milliseconds. Conversions saved before durations were recorded
+     * count as 0, so this is a lower bound for periods that include them.
+     */
+    public double getAverageDurationMs() {
+        return conversions == 0 ? 0 : (double) durationMs / conversions;
+    }
+}
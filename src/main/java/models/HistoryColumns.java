@@ -0,0 +1,359 @@
+package models;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is my compact, column-by-column copy of the conversion history for the History window.
+ * A ConversionRecord is an object with four Strings and a LocalDateTime (itself three objects), and with hundreds of
+ * thousands of them loaded the same "PDF" and "XLSX" end up on the heap once per row. Here every field is a primitive
+ * array instead: formats are int codes into a dictionary, timestamps are epoch millis, and each path is split into its
+ * folder, stored once in a dictionary and shared by every file in it, and its file name. The file names are not
+ * Strings either: they are packed one after another into a single byte array, a byte per character like a Latin-1
+ * String (two for the odd name that needs them), with their start offsets in an int array. That saves the two objects
+ * and some forty bytes of headers each String would cost.
+ * The table gets a HistoryRow per row, which is just this object and an index.
+ *
+ * Rows are only ever appended. Appending is synchronized; reading is not, and is safe for every row below a size()
+ * read beforehand, since the arrays are filled in before the new size is published and only replaced by bigger copies.
+ */
+public final class HistoryColumns {
+
+    private static final int DEFAULT_CAPACITY = 1_024;
+    private static final int NONE = -1;
+
+    private final StringDictionary formats = new StringDictionary();
+    private final StringDictionary directories = new StringDictionary();
+
+    private int[] ids;
+    private long[] timestamps;
+    private int[] sourceFormats;
+    private int[] targetFormats;
+    private int[] sourceDirectories;
+    private int[] targetDirectories;
+    // The source name of row r runs from nameOffsets[2r] to nameOffsets[2r + 1], its target name on to nameOffsets[2r + 2];
+    // a name with characters above 0xFF is stored as two bytes per character and flagged in wideNames
+    private byte[] names;
+    private int[] nameOffsets;
+    private boolean[] wideNames;
+    private boolean[] successes;
+    private volatile int size;
+
+    public HistoryColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedRows How many rows to make room for up front; it still grows past this.
+     */
+    public HistoryColumns(int expectedRows) {
+        int capacity = Math.max(expectedRows, 16);
+        ids = new int[capacity];
+        timestamps = new long[capacity];
+        sourceFormats = new int[capacity];
+        targetFormats = new int[capacity];
+        sourceDirectories = new int[capacity];
+        targetDirectories = new int[capacity];
+        names = new byte[capacity * 32];
+        nameOffsets = new int[capacity * 2 + 1];
+        wideNames = new boolean[capacity * 2];
+        successes = new boolean[capacity];
+    }
+
+    /**
+     * This adds a record after the ones already there. Only the fields the History window shows are kept.
+     * @return The index of the new row.
+     */
+    public synchronized int append(ConversionRecord record) {
+        int row = size;
+        if (row == ids.length) {
+            grow();
+        }
+        ids[row] = record.getId();
+        timestamps[row] = record.getTimestamp() == null ? Long.MIN_VALUE
+                : record.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        sourceFormats[row] = encode(formats, record.getSourceFormat());
+        targetFormats[row] = encode(formats, record.getTargetFormat());
+        String sourcePath = record.getSourcePath();
+        sourceDirectories[row] = encode(directories, directoryOf(sourcePath));
+        appendName(2 * row, nameOf(sourcePath));
+        String targetPath = record.getTargetPath();
+        targetDirectories[row] = encode(directories, directoryOf(targetPath));
+        appendName(2 * row + 1, nameOf(targetPath));
+        successes[row] = record.isSuccess();
+        // Publishing the size is what makes the row visible to readers on other threads
+        size = row + 1;
+        return row;
+    }
+
+    /**
+     * @return The index of the first of the new rows.
+     */
+    public synchronized int appendAll(List<ConversionRecord> records) {
+        int first = size;
+        for (ConversionRecord record : records) {
+            append(record);
+        }
+        return first;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        sourceFormats = Arrays.copyOf(sourceFormats, capacity);
+        targetFormats = Arrays.copyOf(targetFormats, capacity);
+        sourceDirectories = Arrays.copyOf(sourceDirectories, capacity);
+        targetDirectories = Arrays.copyOf(targetDirectories, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity * 2 + 1);
+        wideNames = Arrays.copyOf(wideNames, capacity * 2);
+        successes = Arrays.copyOf(successes, capacity);
+    }
+
+    /**
+     * This gives back the room the arrays were grown by but haven't used, for when no more rows are expected soon.
+     * Appending afterwards still works, it just has to grow the arrays again.
+     */
+    public synchronized void trimToSize() {
+        int capacity = Math.max(size, 16);
+        ids = Arrays.copyOf(ids, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        sourceFormats = Arrays.copyOf(sourceFormats, capacity);
+        targetFormats = Arrays.copyOf(targetFormats, capacity);
+        sourceDirectories = Arrays.copyOf(sourceDirectories, capacity);
+        targetDirectories = Arrays.copyOf(targetDirectories, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity * 2 + 1);
+        wideNames = Arrays.copyOf(wideNames, capacity * 2);
+        successes = Arrays.copyOf(successes, capacity);
+        names = Arrays.copyOf(names, Math.max(nameOffsets[2 * size], 16));
+    }
+
+    private void appendName(int slot, String name) {
+        boolean wide = false;
+        for (int i = 0; i < name.length() && !wide; i++) {
+            wide = name.charAt(i) > 0xFF;
+        }
+        int start = nameOffsets[slot];
+        int end = start + (wide ? name.length() * 2 : name.length());
+        if (end > names.length) {
+            names = Arrays.copyOf(names, Math.max(end, names.length * 2));
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (wide) {
+                names[start + 2 * i] = (byte) (c >> 8);
+                names[start + 2 * i + 1] = (byte) c;
+            } else {
+                names[start + i] = (byte) c;
+            }
+        }
+        wideNames[slot] = wide;
+        nameOffsets[slot + 1] = end;
+    }
+
+    private int nameLength(int slot) {
+        int bytes = nameOffsets[slot + 1] - nameOffsets[slot];
+        return wideNames[slot] ? bytes / 2 : bytes;
+    }
+
+    private static char nameCharAt(byte[] bytes, int start, boolean wide, int index) {
+        if (wide) {
+            return (char) ((bytes[start + 2 * index] & 0xFF) << 8 | bytes[start + 2 * index + 1] & 0xFF);
+        }
+        return (char) (bytes[start + index] & 0xFF);
+    }
+
+    private static int encode(StringDictionary dictionary, String value) {
+        return value == null ? NONE : dictionary.encode(value);
+    }
+
+    private static String decode(StringDictionary dictionary, int code) {
+        return code == NONE ? null : dictionary.decode(code);
+    }
+
+    /**
+     * The folder part of a path, separator included, so folder + name gives the path back exactly.
+     */
+    private static String directoryOf(String path) {
+        if (path == null) {
+            return null;
+        }
+        int cut = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return path.substring(0, cut + 1);
+    }
+
+    private static String nameOf(String path) {
+        if (path == null) {
+            return "";
+        }
+        int cut = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return path.substring(cut + 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public HistoryRow row(int row) {
+        return new HistoryRow(this, row);
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @return The highest record id in the columns, or 0 if there are none.
+     */
+    public int getMaxId() {
+        int rows = size;
+        int maxId = 0;
+        for (int row = 0; row < rows; row++) {
+            maxId = Math.max(maxId, ids[row]);
+        }
+        return maxId;
+    }
+
+    /**
+     * @return The timestamp as epoch millis in the system time zone, or Long.MIN_VALUE if the record had none.
+     */
+    public long getEpochMillis(int row) {
+        return timestamps[row];
+    }
+
+    public LocalDateTime getTimestamp(int row) {
+        long millis = timestamps[row];
+        return millis == Long.MIN_VALUE ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    public boolean isSuccess(int row) {
+        return successes[row];
+    }
+
+    public int getSourceFormatCode(int row) {
+        return sourceFormats[row];
+    }
+
+    public int getTargetFormatCode(int row) {
+        return targetFormats[row];
+    }
+
+    public String getSourceFormat(int row) {
+        return decode(formats, sourceFormats[row]);
+    }
+
+    public String getTargetFormat(int row) {
+        return decode(formats, targetFormats[row]);
+    }
+
+    public int getSourceDirectoryCode(int row) {
+        return sourceDirectories[row];
+    }
+
+    public int getTargetDirectoryCode(int row) {
+        return targetDirectories[row];
+    }
+
+    public String getSourcePath(int row) {
+        return path(sourceDirectories[row], 2 * row);
+    }
+
+    public String getTargetPath(int row) {
+        return path(targetDirectories[row], 2 * row + 1);
+    }
+
+    private String path(int directoryCode, int slot) {
+        if (directoryCode == NONE) {
+            return null;
+        }
+        byte[] bytes = names;
+        int start = nameOffsets[slot];
+        boolean wide = wideNames[slot];
+        StringBuilder path = new StringBuilder(directories.decode(directoryCode));
+        for (int i = 0, length = nameLength(slot); i < length; i++) {
+            path.append(nameCharAt(bytes, start, wide, i));
+        }
+        return path.toString();
+    }
+
+    /**
+     * This checks whether the source path contains some text, ignoring case, without putting the path together.
+     * @param lowerCaseText The text, already in lower case.
+     * @param directoryContains Whether the folder on its own contains the text; folders are shared by many rows, so
+     *        the caller works that out once per folder.
+     */
+    public boolean sourcePathContains(int row, String lowerCaseText, boolean directoryContains) {
+        return pathContains(sourceDirectories[row], 2 * row, lowerCaseText, directoryContains);
+    }
+
+    /**
+     * The same as sourcePathContains, for the target path.
+     */
+    public boolean targetPathContains(int row, String lowerCaseText, boolean directoryContains) {
+        return pathContains(targetDirectories[row], 2 * row + 1, lowerCaseText, directoryContains);
+    }
+
+    private boolean pathContains(int directoryCode, int slot, String text, boolean directoryContains) {
+        if (directoryCode == NONE) {
+            return false;
+        }
+        if (directoryContains) {
+            return true;
+        }
+        // What is left is the file name, and text running across the end of the folder into the name
+        String directory = directories.decode(directoryCode);
+        byte[] bytes = names;
+        int nameStart = nameOffsets[slot];
+        boolean wide = wideNames[slot];
+        int folderLength = directory.length();
+        int length = folderLength + nameLength(slot);
+        int needle = text.length();
+        for (int start = Math.max(0, folderLength - needle + 1); start + needle <= length; start++) {
+            int i = 0;
+            while (i < needle) {
+                int index = start + i;
+                char c = index < folderLength ? directory.charAt(index) : nameCharAt(bytes, nameStart, wide, index - folderLength);
+                if (Character.toLowerCase(c) != text.charAt(i)) {
+                    break;
+                }
+                i++;
+            }
+            if (i == needle) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The code the format column uses for format, or -1 if no row has it.
+     */
+    public synchronized int getFormatCode(String format) {
+        return formats.codeOf(format);
+    }
+
+    public String getFormat(int code) {
+        return formats.decode(code);
+    }
+
+    public String getDirectory(int code) {
+        return directories.decode(code);
+    }
+
+    /**
+     * @return How many distinct formats the rows use; codes run from 0 to this minus one.
+     */
+    public synchronized int getFormatCount() {
+        return formats.size();
+    }
+
+    /**
+     * @return How many distinct folders the rows use; codes run from 0 to this minus one.
+     */
+    public synchronized int getDirectoryCount() {
+        return directories.size();
+    }
+}
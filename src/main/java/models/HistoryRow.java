@@ -0,0 +1,51 @@
+package models;
+
+import java.time.LocalDateTime;
+
+/**
+ * This is one row of a HistoryColumns, as the History table sees it. It holds nothing but where the row is, so a table
+ * of a few hundred thousand rows costs a few megabytes of these; the paths and the timestamp are put together only
+ * when a cell asks for them.
+ */
+public final class HistoryRow {
+
+    private final HistoryColumns columns;
+    private final int row;
+
+    HistoryRow(HistoryColumns columns, int row) {
+        this.columns = columns;
+        this.row = row;
+    }
+
+    public int getId() {
+        return columns.getId(row);
+    }
+
+    public String getSourcePath() {
+        return columns.getSourcePath(row);
+    }
+
+    public String getTargetPath() {
+        return columns.getTargetPath(row);
+    }
+
+    public String getSourceFormat() {
+        return columns.getSourceFormat(row);
+    }
+
+    public String getTargetFormat() {
+        return columns.getTargetFormat(row);
+    }
+
+    public boolean isSuccess() {
+        return columns.isSuccess(row);
+    }
+
+    public LocalDateTime getTimestamp() {
+        return columns.getTimestamp(row);
+    }
+
+    public long getEpochMillis() {
+        return columns.getEpochMillis(row);
+    }
+}
@@ -0,0 +1,50 @@
+package models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This hands out a small int code for every distinct string it is given, so a column that repeats the same few
+ * values (formats, folders) stores each one once and an int per row.
+ * Codes are only added by the HistoryColumns that owns it, under its lock. Looking a code up is safe from any thread
+ * that has read the columns' size, because every code a row uses was added before that size was published.
+ */
+final class StringDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+    private int count;
+
+    /**
+     * @return The code for value, adding it if it is new. Must be called under the owner's lock.
+     */
+    int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count] = value;
+        codes.put(value, count);
+        return count++;
+    }
+
+    /**
+     * @return The code for value, or -1 if it has never been seen. Must be called under the owner's lock.
+     */
+    int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    String decode(int code) {
+        return values[code];
+    }
+
+    int size() {
+        return count;
+    }
+}
@@ -1,44 +1,72 @@
 package ui.controllers;
 
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.function.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+import database.ConversionEventBus;
 import database.ConversionHistoryDAO;
+import database.HistoryCursor;
+import database.HistoryFilter;
+import database.HistoryFilterEngine;
+import database.HistoryRecorder;
+import handlers.HistoryExporter;
 import models.ConversionRecord;
+import models.HistoryColumns;
+import models.HistoryRow;
 import utils.SettingsManager;
 
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
+import javafx.stage.FileChooser;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 
 public class HistoryUIController {
 
-    @FXML private TableView<ConversionRecord> historyTable;
-    @FXML private TableColumn<ConversionRecord, Integer> idColumn;
-    @FXML private TableColumn<ConversionRecord, String> sourcePathColumn;
-    @FXML private TableColumn<ConversionRecord, String> targetPathColumn;
-    @FXML private TableColumn<ConversionRecord, String> sourceFormatColumn;
-    @FXML private TableColumn<ConversionRecord, String> targetFormatColumn;
-    @FXML private TableColumn<ConversionRecord, Boolean> successColumn;
-    @FXML private TableColumn<ConversionRecord, LocalDateTime> timestampColumn;
+    @FXML private TableView<HistoryRow> historyTable;
+    @FXML private TableColumn<HistoryRow, Integer> idColumn;
+    @FXML private TableColumn<HistoryRow, String> sourcePathColumn;
+    @FXML private TableColumn<HistoryRow, String> targetPathColumn;
+    @FXML private TableColumn<HistoryRow, String> sourceFormatColumn;
+    @FXML private TableColumn<HistoryRow, String> targetFormatColumn;
+    @FXML private TableColumn<HistoryRow, Boolean> successColumn;
+    @FXML private TableColumn<HistoryRow, LocalDateTime> timestampColumn;
     @FXML private TextField filterField;
     @FXML private ComboBox<String> statusFilter;
     @FXML private ComboBox<String> timeFilter;
@@ -47,33 +75,68 @@ public class HistoryUIController {
     @FXML private Button clearFilterButton;
     @FXML private Button resetFiltersButton;
     @FXML private Button clearHistoryButton;
+    @FXML private Button exportButton;
+    @FXML private ProgressBar exportProgress;
+
+    // A history up to this size is kept in memory and filtered there; anything bigger is read a page at a time
+    private static final int RESIDENT_HISTORY_LIMIT = 20_000;
+    private static final int PAGE_SIZE = 500;
+    private static final int RESIDENT_FETCH_SIZE = 1_000;
+    private static final double LOAD_MORE_SCROLL_POSITION = 0.9;
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(250);
+    private static final ExecutorService PAGE_LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-page-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final ConversionHistoryDAO historyDAO = new ConversionHistoryDAO();
     private final SettingsManager settingsManager = SettingsManager.getInstance();
-    private final ObservableList<ConversionRecord> masterData = FXCollections.observableArrayList();
-    private FilteredList<ConversionRecord> filteredData;
+    private final ObservableList<HistoryRow> masterData = FXCollections.observableArrayList();
+    private final HistoryFilterEngine filterEngine = new HistoryFilterEngine();
+    private final PauseTransition searchDebounce = new PauseTransition(SEARCH_DEBOUNCE);
+    private final ConcurrentLinkedQueue<ConversionRecord> liveRecords = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean livePulseScheduled = new AtomicBoolean();
+    private final Consumer<List<ConversionRecord>> liveListener = this::queueLiveRecords;
+
+    private HistoryFilter currentFilter = HistoryFilter.ALL;
+    private boolean residentMode;
+    private boolean historyLoading;
+    private int lastShownId;
+    private String currentFilterChoices = "";
+    private Map<String, Long> formatCounts = Map.of();
+    private HistoryColumns pagedHistory = new HistoryColumns();
+    private HistoryCursor nextPageCursor = HistoryCursor.START;
+    private boolean pageLoading;
+    private boolean allPagesLoaded;
+    private volatile int loadGeneration;
+    private Task<?> pendingLoadTask;
+    private Task<Long> exportTask;
 
     @FXML
     private void initialize() {
         setupTableColumns();
         setupComboBoxes();
-        loadData();
         setupFiltering();
+        setupLazyLoading();
+        loadData();
         setupDoubleClickBehavior();
         setupTooltips();
         setupKeyboardShortcuts();
+        setupLiveUpdates();
     }
     
     private void setupTableColumns() {
-        idColumn.setCellValueFactory(new PropertyValueFactory<>("id"));
-        sourcePathColumn.setCellValueFactory(new PropertyValueFactory<>("sourcePath"));
-        targetPathColumn.setCellValueFactory(new PropertyValueFactory<>("targetPath"));
-        sourceFormatColumn.setCellValueFactory(new PropertyValueFactory<>("sourceFormat"));
-        targetFormatColumn.setCellValueFactory(new PropertyValueFactory<>("targetFormat"));
-        successColumn.setCellValueFactory(new PropertyValueFactory<>("success"));
-        timestampColumn.setCellValueFactory(new PropertyValueFactory<>("timestamp"));
+        // Plain getter calls instead of PropertyValueFactory, which looks every cell up by reflection
+        idColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        sourcePathColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getSourcePath()));
+        targetPathColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getTargetPath()));
+        sourceFormatColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getSourceFormat()));
+        targetFormatColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getTargetFormat()));
+        successColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().isSuccess()));
+        timestampColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getTimestamp()));
         
-        successColumn.setCellFactory(column -> new TableCell<ConversionRecord, Boolean>() {
+        successColumn.setCellFactory(column -> new TableCell<HistoryRow, Boolean>() {
             @Override
             protected void updateItem(Boolean success, boolean empty) {
                 super.updateItem(success, empty);
@@ -99,38 +162,340 @@ public class HistoryUIController {
         ));
         timeFilter.setValue("All Time");
         
+        formatFilter.setItems(FXCollections.observableArrayList("All Formats"));
         formatFilter.setValue("All Formats");
+        formatFilter.setCellFactory(listView -> new FormatCountCell());
+        formatFilter.setButtonCell(new FormatCountCell());
         
         statusFilter.setOnAction(e -> applyFilters());
         timeFilter.setOnAction(e -> applyFilters());
         formatFilter.setOnAction(e -> applyFilters());
     }
     
+    /**
+     * This decides how the history is shown. A small history is read whole into the filter engine and filtered in
+     * memory from then on; a big one is left in SQLite and read a filtered page at a time.
+     */
     private void loadData() {
-        masterData.clear();
-        masterData.addAll(historyDAO.getAllRecords());
-        updateFormatFilter();
+        loadFormatCounts();
+        cancelPendingLoad();
+        historyLoading = true;
+        Task<Boolean> residentTask = new Task<Boolean>() {
+            @Override
+            protected Boolean call() throws Exception {
+                HistoryRecorder.getInstance().flush();
+                long count = historyDAO.countRecords();
+                if (count > RESIDENT_HISTORY_LIMIT) {
+                    return false;
+                }
+                // Straight from the cursor into the columns, so the records never all exist as objects at once
+                HistoryColumns history = new HistoryColumns((int) count);
+                historyDAO.streamRecords(HistoryFilter.ALL, RESIDENT_FETCH_SIZE, history::append);
+                history.trimToSize();
+                filterEngine.load(history);
+                return true;
+            }
+
+            @Override
+            protected void succeeded() {
+                // Filters changed while this was running are picked up here too, since it reloads with the current ones
+                residentMode = getValue();
+                historyLoading = false;
+                lastShownId = residentMode ? filterEngine.getMaxId() : 0;
+                reloadRows();
+                applyLiveRecords();
+            }
+
+            @Override
+            protected void failed() {
+                historyLoading = false;
+            }
+        };
+        PAGE_LOADER.submit(residentTask);
     }
-    
-    private void updateFormatFilter() {
-        Set<String> formats = new HashSet<>();
-        for (ConversionRecord record : masterData) {
-            formats.add(record.getSourceFormat());
-            formats.add(record.getTargetFormat());
+
+    /**
+     * Whatever is still loading was for filters that no longer apply; if it hasn't started yet it never will,
+     * and if it has its result is ignored.
+     */
+    private void cancelPendingLoad() {
+        loadGeneration++;
+        if (pendingLoadTask != null) {
+            pendingLoadTask.cancel();
+            pendingLoadTask = null;
         }
-        
+    }
+
+    /**
+     * This shows the rows that match the current filters, from memory or from SQLite depending on the mode.
+     */
+    private void reloadRows() {
+        cancelPendingLoad();
+        currentFilter = buildHistoryFilter();
+        currentFilterChoices = filterChoices();
+        if (residentMode) {
+            filterResidentHistory();
+        } else {
+            restartPaging();
+        }
+    }
+
+    /**
+     * This filters the in-memory history on a background thread. The table keeps its current rows until the
+     * run finishes and then gets the new ones in one go.
+     */
+    private void filterResidentHistory() {
+        allPagesLoaded = true;
+        int generation = loadGeneration;
+        HistoryFilter filter = currentFilter;
+        Task<List<HistoryRow>> filterTask = new Task<List<HistoryRow>>() {
+            @Override
+            protected List<HistoryRow> call() {
+                return filterEngine.filter(filter, () -> isCancelled() || generation != loadGeneration);
+            }
+
+            @Override
+            protected void succeeded() {
+                if (generation == loadGeneration && getValue() != null) {
+                    pendingLoadTask = null;
+                    masterData.setAll(getValue());
+                }
+            }
+        };
+        pendingLoadTask = filterTask;
+        PAGE_LOADER.submit(filterTask);
+    }
+
+    /**
+     * This throws away the loaded pages and starts reading again from the first page that matches the filters.
+     */
+    private void restartPaging() {
+        masterData.clear();
+        pagedHistory = new HistoryColumns();
+        lastShownId = 0;
+        nextPageCursor = HistoryCursor.START;
+        pageLoading = false;
+        allPagesLoaded = false;
+        loadNextPage();
+    }
+
+    /**
+     * This fills the format dropdown from the per-format counts in the database, keeping the current choice if it
+     * still exists.
+     */
+    private void loadFormatCounts() {
+        Task<Map<String, Long>> countsTask = new Task<Map<String, Long>>() {
+            @Override
+            protected Map<String, Long> call() {
+                HistoryRecorder.getInstance().flush();
+                return historyDAO.getFormatCounts();
+            }
+
+            @Override
+            protected void succeeded() {
+                showFormatCounts(getValue());
+            }
+        };
+        PAGE_LOADER.submit(countsTask);
+    }
+
+    private void showFormatCounts(Map<String, Long> counts) {
+        formatCounts = counts;
+        String selected = formatFilter.getValue();
         ObservableList<String> formatOptions = FXCollections.observableArrayList("All Formats");
-        formatOptions.addAll(formats);
+        formatOptions.addAll(formatCounts.keySet());
         formatFilter.setItems(formatOptions);
-        formatFilter.setValue("All Formats");
+        formatFilter.setValue(formatOptions.contains(selected) ? selected : "All Formats");
+    }
+
+    /**
+     * This shows each format in the dropdown with how many conversions used it.
+     */
+    private class FormatCountCell extends ListCell<String> {
+        @Override
+        protected void updateItem(String format, boolean empty) {
+            super.updateItem(format, empty);
+            if (empty || format == null) {
+                setText(null);
+            } else {
+                Long count = formatCounts.get(format);
+                setText(count == null ? format : format + " (" + count + ")");
+            }
+        }
+    }
+
+    /**
+     * This reads the next page of history on a background thread and appends it to the table when it arrives.
+     * Pages from before a refresh are thrown away when they come back.
+     */
+    private void loadNextPage() {
+        if (pageLoading || allPagesLoaded) {
+            return;
+        }
+        pageLoading = true;
+        int generation = loadGeneration;
+        HistoryFilter filter = currentFilter;
+        HistoryCursor cursor = nextPageCursor;
+        Task<List<ConversionRecord>> pageTask = new Task<List<ConversionRecord>>() {
+            @Override
+            protected List<ConversionRecord> call() {
+                if (generation != loadGeneration) {
+                    return List.of();
+                }
+                if (cursor.isStart()) {
+                    // Records can still be waiting in the write-behind queue, make sure they are in the database first
+                    HistoryRecorder.getInstance().flush();
+                }
+                return historyDAO.getRecordsPage(filter, cursor, PAGE_SIZE);
+            }
+
+            @Override
+            protected void succeeded() {
+                if (generation == loadGeneration) {
+                    appendPage(getValue());
+                }
+            }
+
+            @Override
+            protected void failed() {
+                if (generation == loadGeneration) {
+                    pageLoading = false;
+                }
+            }
+        };
+        pendingLoadTask = pageTask;
+        PAGE_LOADER.submit(pageTask);
+    }
+
+    private void appendPage(List<ConversionRecord> page) {
+        pageLoading = false;
+        pendingLoadTask = null;
+        if (page.size() < PAGE_SIZE) {
+            allPagesLoaded = true;
+        }
+        if (!page.isEmpty()) {
+            nextPageCursor = HistoryCursor.after(page.get(page.size() - 1));
+            for (ConversionRecord record : page) {
+                lastShownId = Math.max(lastShownId, record.getId());
+            }
+            int firstRow = pagedHistory.appendAll(page);
+            for (int row = firstRow; row < pagedHistory.size(); row++) {
+                masterData.add(pagedHistory.row(row));
+            }
+        }
+        applyLiveRecords();
+    }
+
+    /**
+     * This keeps the table live while the window is open. Records saved by the history writer come in through the
+     * ConversionEventBus and are added to the table, so a big batch shows up as it runs without any reloads.
+     * The subscription ends when the window closes.
+     */
+    private void setupLiveUpdates() {
+        ConversionEventBus.getInstance().subscribe(liveListener);
+        historyTable.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (newScene != null) {
+                newScene.windowProperty().addListener((windowObs, oldWindow, newWindow) -> {
+                    if (newWindow != null) {
+                        newWindow.addEventHandler(WindowEvent.WINDOW_HIDDEN,
+                                e -> ConversionEventBus.getInstance().unsubscribe(liveListener));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the history writer thread. Batches can arrive every few milliseconds during a big conversion, so
+     * they are queued up and at most one update is waiting on the FX thread at any time, however many arrive.
+     */
+    private void queueLiveRecords(List<ConversionRecord> records) {
+        liveRecords.addAll(records);
+        if (livePulseScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::applyLiveRecords);
+        }
+    }
+
+    /**
+     * This adds everything queued since the last update to the table in one go.
+     * While the history or a page is still being read the records wait, since the read might already include
+     * them; anything at or below the highest id already shown is skipped for the same reason.
+     */
+    private void applyLiveRecords() {
+        livePulseScheduled.set(false);
+        if (historyLoading || pageLoading || liveRecords.isEmpty()) {
+            return;
+        }
+        List<ConversionRecord> arrived = new ArrayList<>();
+        ConversionRecord record;
+        while ((record = liveRecords.poll()) != null) {
+            if (record.getId() > lastShownId) {
+                arrived.add(record);
+            }
+        }
+        if (arrived.isEmpty()) {
+            return;
+        }
+        countFormats(arrived);
+        if (residentMode) {
+            int firstRow = filterEngine.size();
+            filterEngine.append(arrived);
+            lastShownId = arrived.get(arrived.size() - 1).getId();
+            if (pendingLoadTask != null) {
+                // The filter that is running may not have seen these, run it again with them in
+                cancelPendingLoad();
+                filterResidentHistory();
+                return;
+            }
+            masterData.addAll(filterEngine.matching(firstRow, currentFilter));
+        } else if (!allPagesLoaded) {
+            // They are at the end of the history in SQLite, paging will get to them
+            return;
+        } else {
+            lastShownId = arrived.get(arrived.size() - 1).getId();
+            int firstRow = pagedHistory.appendAll(arrived);
+            masterData.addAll(HistoryFilterEngine.matching(pagedHistory, firstRow, currentFilter));
+        }
+    }
+
+    private void countFormats(List<ConversionRecord> records) {
+        Map<String, Long> counts = new TreeMap<>(formatCounts);
+        boolean newFormat = false;
+        for (ConversionRecord record : records) {
+            newFormat |= counts.merge(record.getSourceFormat(), 1L, Long::sum) == 1L;
+            newFormat |= counts.merge(record.getTargetFormat(), 1L, Long::sum) == 1L;
+        }
+        if (newFormat) {
+            showFormatCounts(counts);
+        } else {
+            formatCounts = counts;
+        }
+    }
+
+    /**
+     * This loads the next page once the user scrolls most of the way down the table.
+     */
+    private void setupLazyLoading() {
+        historyTable.skinProperty().addListener((obs, oldSkin, newSkin) -> {
+            for (Node node : historyTable.lookupAll(".scroll-bar")) {
+                if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                    ScrollBar scrollBar = (ScrollBar) node;
+                    scrollBar.valueProperty().addListener((valueObs, oldValue, newValue) -> {
+                        if (newValue.doubleValue() >= scrollBar.getMax() * LOAD_MORE_SCROLL_POSITION) {
+                            loadNextPage();
+                        }
+                    });
+                }
+            }
+        });
     }
     
     private void setupFiltering() {
-        filteredData = new FilteredList<>(masterData, p -> true);
-        
-        filterField.textProperty().addListener((observable, oldValue, newValue) -> applyFilters());
+        // Typing restarts the timer, so only the text the user pauses on gets searched
+        searchDebounce.setOnFinished(e -> applyFilters());
+        filterField.textProperty().addListener((observable, oldValue, newValue) -> searchDebounce.playFromStart());
         
-        SortedList<ConversionRecord> sortedData = new SortedList<>(filteredData);
+        SortedList<HistoryRow> sortedData = new SortedList<>(masterData);
         sortedData.comparatorProperty().bind(historyTable.comparatorProperty());
         historyTable.setItems(sortedData);
     }
@@ -138,73 +503,73 @@ public class HistoryUIController {
     private void setupDoubleClickBehavior() {
         historyTable.setOnMouseClicked((MouseEvent event) -> {
             if (event.getClickCount() == 2) {
-                ConversionRecord selectedRecord = historyTable.getSelectionModel().getSelectedItem();
-                if (selectedRecord != null) {
-                    showConversionDetails(selectedRecord);
+                HistoryRow selectedRow = historyTable.getSelectionModel().getSelectedItem();
+                if (selectedRow != null) {
+                    loadConversionDetails(selectedRow.getId());
                 }
             }
         });
     }
     
+    /**
+     * The filters are never evaluated on the FX thread: a change to any of them either re-runs the in-memory
+     * filter or restarts paging, both in the background. Runs for older filters are cancelled or dropped, so only
+     * the latest one shows.
+     */
     private void applyFilters() {
-        filteredData.setPredicate(createFilterPredicate());
+        searchDebounce.stop();
+        if (!filterChoices().equals(currentFilterChoices)) {
+            reloadRows();
+        }
     }
-    
-    private Predicate<ConversionRecord> createFilterPredicate() {
-        return record -> {
-            // Thr text search filter
-            String searchText = filterField.getText();
-            if (searchText != null && !searchText.trim().isEmpty()) {
-                String lowerCaseFilter = searchText.toLowerCase();
-                boolean textMatch = record.getSourcePath().toLowerCase().contains(lowerCaseFilter) || record.getTargetPath().toLowerCase().contains(lowerCaseFilter) || record.getSourceFormat().toLowerCase().contains(lowerCaseFilter) || record.getTargetFormat().toLowerCase().contains(lowerCaseFilter);
-                if (!textMatch) return false;
-            }
-            
-            // The tatus filter
-            String statusValue = statusFilter.getValue();
-            if (statusValue != null && !statusValue.equals("All")) {
-                boolean isSuccess = record.isSuccess();
-                if (statusValue.equals("Completed") && !isSuccess) return false;
-                if (statusValue.equals("Failed") && isSuccess) return false;
-            }
-            
-            // YHr time filter
-            String timeValue = timeFilter.getValue();
-            if (timeValue != null && !timeValue.equals("All Time")) {
-                LocalDateTime recordTime = record.getTimestamp();
-                LocalDateTime now = LocalDateTime.now();
-                
-                switch (timeValue) {
-                    case "Today":
-                        if (recordTime.toLocalDate().isBefore(now.toLocalDate())) return false;
-                        break;
-                    case "This Week":
-                        LocalDateTime weekStart = now.minus(7, ChronoUnit.DAYS);
-                        if (recordTime.isBefore(weekStart)) return false;
-                        break;
-                    case "This Month":
-                        LocalDateTime monthStart = now.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0);
-                        if (recordTime.isBefore(monthStart)) return false;
-                        break;
-                    case "Last 30 Days":
-                        LocalDateTime thirtyDaysAgo = now.minus(30, ChronoUnit.DAYS);
-                        if (recordTime.isBefore(thirtyDaysAgo)) return false;
-                        break;
-                }
-            }
-            
-            //The gormat filter
-            String formatValue = formatFilter.getValue();
-            if (formatValue != null && !formatValue.equals("All Formats")) {
-                boolean formatMatch = record.getSourceFormat().equals(formatValue) ||
-                                    record.getTargetFormat().equals(formatValue);
-                if (!formatMatch) return false;
+
+    private HistoryFilter buildHistoryFilter() {
+        Boolean success = null;
+        String statusValue = statusFilter.getValue();
+        if ("Completed".equals(statusValue)) {
+            success = true;
+        } else if ("Failed".equals(statusValue)) {
+            success = false;
+        }
+
+        LocalDateTime since = null;
+        String timeValue = timeFilter.getValue();
+        if (timeValue != null) {
+            LocalDateTime now = LocalDateTime.now();
+            switch (timeValue) {
+                case "Today":
+                    since = now.toLocalDate().atStartOfDay();
+                    break;
+                case "This Week":
+                    since = now.minus(7, ChronoUnit.DAYS);
+                    break;
+                case "This Month":
+                    since = now.withDayOfMonth(1).toLocalDate().atStartOfDay();
+                    break;
+                case "Last 30 Days":
+                    since = now.minus(30, ChronoUnit.DAYS);
+                    break;
+                default:
+                    break;
             }
-            
-            return true;
-        };
+        }
+
+        String format = formatFilter.getValue();
+        if (format == null || format.equals("All Formats")) {
+            format = null;
+        }
+
+        return new HistoryFilter(success, since, format, filterField.getText());
     }
 
+    /**
+     * This identifies the chosen filters. "Last 30 Days" means a different instant every time it is turned into a
+     * HistoryFilter, so changes are detected on the choices rather than on the filter itself.
+     */
+    private String filterChoices() {
+        return statusFilter.getValue() + "|" + timeFilter.getValue() + "|" + formatFilter.getValue() + "|" + filterField.getText().trim();
+    }
+    
     @FXML
     private void handleClearFilter() {
         filterField.setText("");
@@ -234,15 +599,85 @@ public class HistoryUIController {
         }
 
         if (proceed) {
+            HistoryRecorder.getInstance().flush();
             historyDAO.clearAllRecords();
             refreshTable();
             showAlert("History Cleared", "All conversion history has been cleared.");
         }
     }
 
+    /**
+     * This exports the records matching the current filters to CSV or JSON Lines (gzipped if the name ends in .gz).
+     * The export streams from the database on its own thread, so even a huge history doesn't tie up the window;
+     * pressing the button again while it runs cancels it.
+     */
+    @FXML
+    private void handleExportHistory() {
+        if (exportTask != null && exportTask.isRunning()) {
+            exportTask.cancel();
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export History");
+        fileChooser.setInitialFileName("conversion-history.csv");
+        fileChooser.getExtensionFilters().addAll(
+            new FileChooser.ExtensionFilter("CSV", "*.csv"),
+            new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl"),
+            new FileChooser.ExtensionFilter("Gzipped CSV", "*.csv.gz"),
+            new FileChooser.ExtensionFilter("Gzipped JSON Lines", "*.jsonl.gz")
+        );
+        File file = fileChooser.showSaveDialog(historyTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        Path destination = file.toPath();
+        HistoryExporter.Format format = HistoryExporter.formatOf(destination);
+        boolean gzip = HistoryExporter.isGzipped(destination);
+        HistoryFilter filter = buildHistoryFilter();
+
+        exportTask = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                // Records still waiting in the write-behind queue belong in the export too; waiting for them here
+                // keeps the FX thread free
+                HistoryRecorder.getInstance().flush();
+                return new HistoryExporter(historyDAO).export(destination, format, gzip, filter,
+                        (exported, total) -> updateProgress(exported, Math.max(total, exported)));
+            }
+        };
+        exportProgress.progressProperty().bind(exportTask.progressProperty());
+        exportProgress.setVisible(true);
+        exportButton.setText("Cancel Export");
+
+        exportTask.setOnSucceeded(e -> {
+            finishExport();
+            showAlert("History Exported", "Exported " + exportTask.getValue() + " records to " + destination.getFileName() + ".");
+        });
+        exportTask.setOnCancelled(e -> finishExport());
+        exportTask.setOnFailed(e -> {
+            finishExport();
+            Throwable error = exportTask.getException();
+            if (!(error instanceof InterruptedIOException)) {
+                System.err.println("Error exporting history: " + error.getMessage());
+                showAlert("Export Failed", "Could not export the history: " + error.getMessage());
+            }
+        });
+
+        Thread exportThread = new Thread(exportTask, "history-export");
+        exportThread.setDaemon(true);
+        exportThread.start();
+    }
+
+    private void finishExport() {
+        exportProgress.progressProperty().unbind();
+        exportProgress.setVisible(false);
+        exportButton.setText("Export...");
+    }
+
     public void refreshTable() {
         loadData();
-        applyFilters();
     }
 
     private void showAlert(String title, String message) {
@@ -253,6 +688,26 @@ public class HistoryUIController {
         alert.showAndWait();
     }
 
+    /**
+     * The table only keeps what it shows, so the rest of the record is read from the database when it is asked for.
+     */
+    private void loadConversionDetails(int id) {
+        Task<ConversionRecord> detailsTask = new Task<ConversionRecord>() {
+            @Override
+            protected ConversionRecord call() {
+                return historyDAO.getRecord(id);
+            }
+
+            @Override
+            protected void succeeded() {
+                if (getValue() != null) {
+                    showConversionDetails(getValue());
+                }
+            }
+        };
+        PAGE_LOADER.submit(detailsTask);
+    }
+
     private void showConversionDetails(ConversionRecord record) {
         Alert detailsAlert = new Alert(Alert.AlertType.INFORMATION);
         detailsAlert.setTitle("Conversion Details");
@@ -275,6 +730,19 @@ public class HistoryUIController {
             record.isSuccess() ? "✅ Success" : "❌ Failed",
             record.getTimestamp().toString()
         );
+        // Records saved before these were tracked don't have them
+        if (record.getDurationMs() != null) {
+            details += "\nDuration: " + record.getDurationMs() + " ms";
+        }
+        if (record.getInputBytes() != null) {
+            details += "\nInput Size: " + record.getInputBytes() + " bytes";
+        }
+        if (record.getOutputBytes() != null) {
+            details += "\nOutput Size: " + record.getOutputBytes() + " bytes";
+        }
+        if (record.getErrorMessage() != null) {
+            details += "\n\nError: " + record.getErrorMessage();
+        }
 
         detailsAlert.setContentText(details);
         detailsAlert.showAndWait();
@@ -295,6 +763,9 @@ public class HistoryUIController {
         if (clearHistoryButton != null) {
             clearHistoryButton.setTooltip(new Tooltip("Clear all conversion history (Ctrl+Delete)"));
         }
+        if (exportButton != null) {
+            exportButton.setTooltip(new Tooltip("Export the filtered history to CSV or JSON Lines"));
+        }
         
         historyTable.setTooltip(new Tooltip("Double-click any row to view conversion details"));
         
@@ -1,8 +1,10 @@
 package ui.controllers;
 
-import database.ConversionHistoryDAO;
+import database.HistoryRecorder;
 import handlers.FileConversionHandler;
+import handlers.TarHandler;
 import handlers.ZipHandler;
+import handlers.ZipOptions;
 import models.ConversionRecord;
 import utils.SettingsManager;
 import javafx.application.Platform;
@@ -23,12 +25,19 @@ import javafx.fxml.Initializable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 
 public class MainUIController implements Initializable {
@@ -44,6 +53,12 @@ public class MainUIController implements Initializable {
     @FXML private TextField sourceFolderField;
     @FXML private TextField zipOutputLocationField;
     @FXML private CheckBox encryptCheckbox;
+    @FXML private CheckBox updateExistingZipCheckbox;
+    @FXML private ComboBox<String> zipConvertFormatBox;
+    @FXML private ComboBox<String> zipArchiveFormatBox;
+    @FXML private TextField zipIncludeField;
+    @FXML private TextField zipExcludeField;
+    @FXML private TextField zipSplitSizeField;
     @FXML private VBox passwordBox;
     @FXML private PasswordField passwordField;
     @FXML private TextField passwordTextField;
@@ -51,6 +66,15 @@ public class MainUIController implements Initializable {
     @FXML private ProgressBar zipProgressBar;
     @FXML private Label zipStatusLabel;
 
+    @FXML private TextField extractArchiveField;
+    @FXML private TextField extractDestinationField;
+    @FXML private PasswordField extractPasswordField;
+    @FXML private ProgressBar extractProgressBar;
+    @FXML private Label extractStatusLabel;
+    @FXML private Button browseArchiveButton;
+    @FXML private Button browseExtractDestinationButton;
+    @FXML private Button extractZipButton;
+
     @FXML private Button browseFileButton;
     @FXML private Button browseOutputButton;
     @FXML private Button convertFileButton;
@@ -60,18 +84,26 @@ public class MainUIController implements Initializable {
 
     private final FileConversionHandler conversionHandler = new FileConversionHandler();
     private final ZipHandler zipHandler = new ZipHandler();
-    private final ConversionHistoryDAO historyDAO = new ConversionHistoryDAO();
+    private final TarHandler tarHandler = new TarHandler();
+    private final HistoryRecorder historyRecorder = HistoryRecorder.getInstance();
     private final SettingsManager settingsManager = SettingsManager.getInstance();
+    private Task<Integer> extractTask;
     
     private final ObservableList<String> allFormats = FXCollections.observableArrayList(
         "PDF", "DOCX", "XLSX", "CSV", "JPG", "PNG", "WEBP"
     );
 
+    // The Folder to ZIP tab's archive formats; they double as the target format in the history
+    private static final String ARCHIVE_FORMAT_ZIP = "ZIP";
+    private static final String ARCHIVE_FORMAT_TAR_GZ = "TAR.GZ";
+    private static final String ARCHIVE_FORMAT_TAR_ZST = "TAR.ZST";
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         setupTabPane();
         setupFileConverter();
         setupZipConverter();
+        setupZipExtractor();
         setupPasswordToggle();
         setupTooltips();
     }
@@ -110,6 +142,16 @@ public class MainUIController implements Initializable {
         passwordBox.setVisible(false);
         passwordBox.setManaged(false);
 
+        // Converted files are new every time, so there is nothing to update in place
+        zipConvertFormatBox.setItems(allFormats);
+        zipConvertFormatBox.valueProperty().addListener((obs, oldFormat, newFormat) -> updateZipOptionStates());
+
+        // Tarballs are written from scratch, unencrypted and in one piece, so only the filters apply to them
+        zipArchiveFormatBox.setItems(FXCollections.observableArrayList(ARCHIVE_FORMAT_ZIP, ARCHIVE_FORMAT_TAR_GZ,
+            ARCHIVE_FORMAT_TAR_ZST));
+        zipArchiveFormatBox.setValue(ARCHIVE_FORMAT_ZIP);
+        zipArchiveFormatBox.valueProperty().addListener((obs, oldFormat, newFormat) -> updateZipOptionStates());
+
         encryptCheckbox.selectedProperty().addListener((obs, wasSelected, isNowSelected) -> {
             passwordBox.setVisible(isNowSelected);
             passwordBox.setManaged(isNowSelected);
@@ -120,6 +162,41 @@ public class MainUIController implements Initializable {
         });
     }
 
+    private void updateZipOptionStates() {
+        boolean tarball = tarCompression(zipArchiveFormatBox.getValue()) != null;
+        boolean converting = zipConvertFormatBox.getValue() != null;
+        updateExistingZipCheckbox.setDisable(tarball || converting);
+        if (tarball || converting) {
+            updateExistingZipCheckbox.setSelected(false);
+        }
+        zipConvertFormatBox.setDisable(tarball);
+        encryptCheckbox.setDisable(tarball);
+        zipSplitSizeField.setDisable(tarball);
+        if (tarball) {
+            zipConvertFormatBox.setValue(null);
+            encryptCheckbox.setSelected(false);
+            zipSplitSizeField.clear();
+        }
+    }
+
+    /**
+     * @return The tar compression for an archive format choice, or null if it is ZIP.
+     */
+    private static TarHandler.Compression tarCompression(String archiveFormat) {
+        if (ARCHIVE_FORMAT_TAR_GZ.equals(archiveFormat)) {
+            return TarHandler.Compression.GZIP;
+        }
+        if (ARCHIVE_FORMAT_TAR_ZST.equals(archiveFormat)) {
+            return TarHandler.Compression.ZSTD;
+        }
+        return null;
+    }
+
+    private void setupZipExtractor() {
+        extractStatusLabel.setVisible(false);
+        extractProgressBar.setVisible(false);
+    }
+
     private void setupPasswordToggle() {
         passwordTextField.managedProperty().bind(showPasswordCheckbox.selectedProperty());
         passwordTextField.visibleProperty().bind(showPasswordCheckbox.selectedProperty());
@@ -263,6 +340,9 @@ public class MainUIController implements Initializable {
         statusLabel.setText("Converting...");
         
         Task<Void> conversionTask = new Task<Void>() {
+            private final long startNanos = System.nanoTime();
+            private File producedFile;
+
             @Override
             protected Void call() throws Exception {
                 File sourceFileObj = new File(sourceFile);
@@ -291,6 +371,7 @@ public class MainUIController implements Initializable {
                     return null;
                 }
                 
+                producedFile = targetFileObj;
                 conversionHandler.convertFile(sourceFileObj, targetFileObj, targetFormat);
                 return null;
             }
@@ -301,13 +382,10 @@ public class MainUIController implements Initializable {
                     conversionProgressBar.setVisible(false);
                     statusLabel.setText("Conversion completed successfully!");
                     
-                    if (settingsManager.getLogSuccessfulConversions()) {
-                        String outputPath = outputLocation.isEmpty() ? new File(sourceFile).getParent() : outputLocation;
-                        String fileName = new File(sourceFile).getName();
-                        String sourceFormat = fileName.substring(fileName.lastIndexOf('.') + 1).toUpperCase();
-                        historyDAO.addConversionRecord(new ConversionRecord(
-                            sourceFile, outputPath, sourceFormat, targetFormat, true
-                        ));
+                    // producedFile is only set once the user didn't cancel at the overwrite prompt
+                    if (producedFile != null && settingsManager.getLogSuccessfulConversions()) {
+                        historyRecorder.record(historyRecord(sourceFile, conversionOutputPath(), sourceFormatOf(sourceFile), targetFormat,
+                            true, startNanos, sizeOf(new File(sourceFile)), sizeOf(producedFile), null));
                     }
                 });
             }
@@ -318,8 +396,15 @@ public class MainUIController implements Initializable {
                     conversionProgressBar.setVisible(false);
                     statusLabel.setText("Conversion failed");
                     showError("Conversion Failed", getException().getMessage());
+                    historyRecorder.record(historyRecord(sourceFile, conversionOutputPath(), sourceFormatOf(sourceFile), targetFormat,
+                        false, startNanos, sizeOf(new File(sourceFile)), null, getException().getMessage()));
                 });
             }
+
+            private String conversionOutputPath() {
+                return producedFile != null ? producedFile.getParent()
+                    : outputLocation.isEmpty() ? new File(sourceFile).getParent() : outputLocation;
+            }
         };
         
         new Thread(conversionTask).start();
@@ -357,6 +442,10 @@ public class MainUIController implements Initializable {
         String sourceFolder = sourceFolderField.getText().trim();
         String outputLocation = zipOutputLocationField.getText().trim();
         boolean encrypt = encryptCheckbox.isSelected();
+        boolean updateExisting = updateExistingZipCheckbox.isSelected();
+        String convertFormat = zipConvertFormatBox.getValue();
+        String archiveFormat = zipArchiveFormatBox.getValue() == null ? ARCHIVE_FORMAT_ZIP : zipArchiveFormatBox.getValue();
+        TarHandler.Compression tarCompression = tarCompression(archiveFormat);
         String password = encrypt ? passwordField.getText() : null;
         
         if (sourceFolder.isEmpty()) {
@@ -369,10 +458,27 @@ public class MainUIController implements Initializable {
             return;
         }
         
+        ZipOptions zipOptions;
+        try {
+            zipOptions = new ZipOptions(ZipOptions.parsePatterns(zipIncludeField.getText()),
+                ZipOptions.parsePatterns(zipExcludeField.getText()), splitSizeBytes(zipSplitSizeField.getText()));
+        } catch (IllegalArgumentException e) {
+            showError("Invalid Option", e.getMessage());
+            return;
+        }
+        
         zipProgressBar.setVisible(true);
-        zipStatusLabel.setText("Creating ZIP archive...");
+        zipStatusLabel.setText(tarCompression == null ? "Creating ZIP archive..." : "Creating " + archiveFormat + " archive...");
+        zipStatusLabel.setVisible(true);
         
         Task<Void> zipTask = new Task<Void>() {
+            private final long startNanos = System.nanoTime();
+            private File producedFile;
+            private Long inputBytes;
+            private int reusedEntries = -1;
+            private int convertedFiles = -1;
+            private int tarredFiles = -1;
+
             @Override
             protected Void call() throws Exception {
                 File sourceFile = new File(sourceFolder);
@@ -387,7 +493,15 @@ public class MainUIController implements Initializable {
                         : sourceFile.getParent();
                 }
                 
-                File zipFile = new File(outputDir, sourceFile.getName() + ".zip");
+                File zipFile = new File(outputDir, sourceFile.getName()
+                    + (tarCompression == null ? ".zip" : tarCompression.getExtension()));
+                
+                if (updateExisting && zipFile.exists()) {
+                    // Updating is what was asked for, so there is nothing to confirm
+                    producedFile = zipFile;
+                    reusedEntries = zipHandler.updateZip(sourceFile, zipFile, password, zipOptions, this::zipProgress);
+                    return null;
+                }
                 
                 if (zipFile.exists() && !confirmOverwrite(zipFile)) {
                     Platform.runLater(() -> {
@@ -397,21 +511,49 @@ public class MainUIController implements Initializable {
                     return null;
                 }
                 
-                zipHandler.createZip(sourceFile, zipFile, password);
+                producedFile = zipFile;
+                if (tarCompression != null) {
+                    TarHandler.Level level = TarHandler.Level.fromLabel(settingsManager.getArchiveCompressionLevel());
+                    tarredFiles = tarHandler.createTar(sourceFile, zipFile, tarCompression, level, zipOptions,
+                        this::zipProgress);
+                    return null;
+                }
+                if (convertFormat != null) {
+                    // Converted straight into the archive, without writing the converted files anywhere first
+                    convertedFiles = zipHandler.convertAndZip(sourceFile, convertFormat, zipFile, password, zipOptions,
+                        this::zipProgress);
+                    return null;
+                }
+                zipHandler.zipFolder(sourceFile, zipFile, password, zipOptions, this::zipProgress);
                 return null;
             }
+
+            /**
+             * Shows how far the archive has got. The handlers' last call has the bytes that actually went in, filters
+             * and all, so that is what the history records rather than the size of the whole folder.
+             */
+            private void zipProgress(int files, long bytes) {
+                inputBytes = bytes;
+                Platform.runLater(() -> zipStatusLabel.setText(String.format(
+                    "Creating %s archive... %d files, %.1f MB", archiveFormat, files, bytes / (1024.0 * 1024.0))));
+            }
             
             @Override
             protected void succeeded() {
                 Platform.runLater(() -> {
                     zipProgressBar.setVisible(false);
-                    zipStatusLabel.setText("ZIP archive created successfully!");
+                    if (tarredFiles >= 0) {
+                        zipStatusLabel.setText(archiveFormat + " archive created with " + tarredFiles + " files");
+                    } else if (convertedFiles >= 0) {
+                        zipStatusLabel.setText("ZIP archive created with " + convertedFiles + " files converted to " + convertFormat);
+                    } else {
+                        zipStatusLabel.setText(reusedEntries < 0 ? "ZIP archive created successfully!"
+                            : "ZIP archive updated successfully (" + reusedEntries + " unchanged files reused)");
+                    }
                     
-                    if (settingsManager.getLogSuccessfulConversions()) {
-                        String outputPath = outputLocation.isEmpty() ? new File(sourceFolder).getParent() : outputLocation;
-                        historyDAO.addConversionRecord(new ConversionRecord(
-                            sourceFolder, outputPath, "FOLDER", "ZIP", true
-                        ));
+                    if (producedFile != null && settingsManager.getLogSuccessfulConversions()) {
+                        historyRecorder.record(historyRecord(sourceFolder, zipOutputPath(), "FOLDER", archiveFormat,
+                            true, startNanos, inputBytes, sizeOf(producedFile), null));
                     }
                 });
             }
@@ -420,15 +562,132 @@ public class MainUIController implements Initializable {
             protected void failed() {
                 Platform.runLater(() -> {
                     zipProgressBar.setVisible(false);
-                    zipStatusLabel.setText("ZIP creation failed");
-                    showError("ZIP Creation Failed", getException().getMessage());
+                    zipStatusLabel.setText(archiveFormat + " creation failed");
+                    showError(archiveFormat + " Creation Failed", getException().getMessage());
+                    historyRecorder.record(historyRecord(sourceFolder, zipOutputPath(), "FOLDER", archiveFormat,
+                        false, startNanos, null, null, getException().getMessage()));
                 });
             }
+
+            private String zipOutputPath() {
+                return producedFile != null ? producedFile.getParent()
+                    : outputLocation.isEmpty() ? new File(sourceFolder).getParent() : outputLocation;
+            }
         };
         
         new Thread(zipTask).start();
     }
 
+    @FXML
+    private void handleBrowseArchive() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select ZIP Archive");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("ZIP Archives", "*.zip"));
+        File selectedFile = fileChooser.showOpenDialog(extractArchiveField.getScene().getWindow());
+        if (selectedFile != null) {
+            extractArchiveField.setText(selectedFile.getAbsolutePath());
+            extractStatusLabel.setVisible(false);
+        }
+    }
+
+    @FXML
+    private void handleBrowseExtractDestination() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Select Extraction Folder");
+        File selectedDirectory = directoryChooser.showDialog(extractDestinationField.getScene().getWindow());
+        if (selectedDirectory != null) {
+            extractDestinationField.setText(selectedDirectory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * This extracts the chosen archive on a background thread. While it runs the button cancels it instead.
+     */
+    @FXML
+    private void handleExtractZip() {
+        if (extractTask != null && extractTask.isRunning()) {
+            extractTask.cancel();
+            return;
+        }
+
+        String archivePath = extractArchiveField.getText().trim();
+        if (archivePath.isEmpty()) {
+            showError("Input Required", "Please select a ZIP archive.");
+            return;
+        }
+        File archive = new File(archivePath);
+        if (!archive.isFile()) {
+            showError("Archive Not Found", "The file '" + archivePath + "' does not exist.");
+            return;
+        }
+        String destinationPath = extractDestinationField.getText().trim();
+        File destination = destinationPath.isEmpty()
+            ? new File(archive.getParentFile(), archive.getName().replaceFirst("(?i)[.]zip$", ""))
+            : new File(destinationPath);
+        String password = extractPasswordField.getText();
+        long startNanos = System.nanoTime();
+        AtomicBoolean declined = new AtomicBoolean();
+
+        extractTask = new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                return zipHandler.extractZip(archive, destination, password,
+                    existing -> {
+                        boolean overwrite = existing.size() == 1 ? confirmOverwrite(existing.get(0).toFile())
+                            : confirmOverwrite(existing.size() + " files in '" + destination.getName()
+                                + "' already exist. Do you want to overwrite them?");
+                        declined.set(!overwrite);
+                        return overwrite;
+                    },
+                    (extracted, total) -> updateProgress(extracted, Math.max(total, 1)));
+            }
+        };
+        extractProgressBar.progressProperty().bind(extractTask.progressProperty());
+        extractProgressBar.setVisible(true);
+        extractStatusLabel.setText("Extracting ZIP archive...");
+        extractStatusLabel.setVisible(true);
+        extractZipButton.setText("Cancel");
+
+        extractTask.setOnSucceeded(e -> {
+            finishExtraction();
+            if (declined.get()) {
+                extractStatusLabel.setText("Extraction cancelled by user.");
+                return;
+            }
+            extractStatusLabel.setText("Extracted " + extractTask.getValue() + " files to " + destination.getAbsolutePath());
+            if (settingsManager.getLogSuccessfulConversions()) {
+                historyRecorder.record(historyRecord(archive.getAbsolutePath(), destination.getAbsolutePath(), "ZIP", "FOLDER",
+                    true, startNanos, archive.length(), null, null));
+            }
+        });
+        extractTask.setOnCancelled(e -> {
+            finishExtraction();
+            extractStatusLabel.setText("Extraction cancelled.");
+        });
+        extractTask.setOnFailed(e -> {
+            finishExtraction();
+            Throwable error = extractTask.getException();
+            if (error instanceof InterruptedIOException) {
+                extractStatusLabel.setText("Extraction cancelled.");
+                return;
+            }
+            extractStatusLabel.setText("Extraction failed");
+            showError("ZIP Extraction Failed", error.getMessage());
+            historyRecorder.record(historyRecord(archive.getAbsolutePath(), destination.getAbsolutePath(), "ZIP", "FOLDER",
+                false, startNanos, archive.length(), null, error.getMessage()));
+        });
+
+        Thread extractThread = new Thread(extractTask, "zip-extract");
+        extractThread.setDaemon(true);
+        extractThread.start();
+    }
+
+    private void finishExtraction() {
+        extractProgressBar.progressProperty().unbind();
+        extractProgressBar.setVisible(false);
+        extractZipButton.setText("Extract Archive");
+    }
+
     @FXML
     private void handleOpenFile() {
         mainTabPane.getSelectionModel().select(0);
@@ -452,11 +711,22 @@ public class MainUIController implements Initializable {
         sourceFolderField.clear();
         zipOutputLocationField.clear();
         encryptCheckbox.setSelected(false);
+        updateExistingZipCheckbox.setSelected(false);
+        zipArchiveFormatBox.setValue(ARCHIVE_FORMAT_ZIP);
+        zipConvertFormatBox.setValue(null);
+        zipIncludeField.clear();
+        zipExcludeField.clear();
+        zipSplitSizeField.clear();
         passwordField.clear();
         showPasswordCheckbox.setSelected(false);
         zipProgressBar.setVisible(false);
         zipStatusLabel.setText("Ready to create ZIP archive");
         
+        extractArchiveField.clear();
+        extractDestinationField.clear();
+        extractPasswordField.clear();
+        extractStatusLabel.setVisible(false);
+        
         mainTabPane.getSelectionModel().select(0);
     }
 
@@ -465,6 +735,11 @@ public class MainUIController implements Initializable {
         openWindow("/ui/HistoryUI.fxml", "Conversion History", 1200, 750);
     }
 
+    @FXML
+    private void handleShowStatistics() {
+        openWindow("/ui/StatisticsUI.fxml", "Conversion Statistics", 1100, 750);
+    }
+
     @FXML
     private void handleShowSettings() {
         openWindow("/ui/SettingsUI.fxml", "Settings", 700, 600);
@@ -532,6 +807,12 @@ public class MainUIController implements Initializable {
         sourceFolderField.clear();
         zipOutputLocationField.clear();
         encryptCheckbox.setSelected(false);
+        updateExistingZipCheckbox.setSelected(false);
+        zipArchiveFormatBox.setValue(ARCHIVE_FORMAT_ZIP);
+        zipConvertFormatBox.setValue(null);
+        zipIncludeField.clear();
+        zipExcludeField.clear();
+        zipSplitSizeField.clear();
         passwordField.clear();
         passwordTextField.clear();
         showPasswordCheckbox.setSelected(false);
@@ -559,6 +840,10 @@ public class MainUIController implements Initializable {
     }
 
     private boolean confirmOverwrite(File file) {
+        return confirmOverwrite("The file '" + file.getName() + "' already exists. Do you want to overwrite it?");
+    }
+
+    private boolean confirmOverwrite(String message) {
         if (settingsManager.getOverwriteExistingFiles()) {
             return true;
         }
@@ -571,7 +856,7 @@ public class MainUIController implements Initializable {
                 Alert confirmAlert = new Alert(Alert.AlertType.CONFIRMATION);
                 confirmAlert.setTitle("File Exists");
                 confirmAlert.setHeaderText("Overwrite Existing File?");
-                confirmAlert.setContentText("The file '" + file.getName() + "' already exists. Do you want to overwrite it?");
+                confirmAlert.setContentText(message);
                 
                 Optional<ButtonType> result = confirmAlert.showAndWait();
                 userResponse.set(result.isPresent() && result.get() == ButtonType.OK);
@@ -592,6 +877,8 @@ public class MainUIController implements Initializable {
 
     private void performFileConversion(File sourceFile, File targetFile, String targetFormat) {
         Task<Boolean> conversionTask = new Task<Boolean>() {
+            private final long startNanos = System.nanoTime();
+
             @Override
             protected Boolean call() throws Exception {
                 updateProgress(0, 1);
@@ -606,18 +893,21 @@ public class MainUIController implements Initializable {
                     statusLabel.getStyleClass().clear();
                     statusLabel.getStyleClass().add("success-text");
                     
-                    historyDAO.addConversionRecord(new ConversionRecord(
+                    historyRecorder.record(historyRecord(
                         sourceFile.getAbsolutePath(),
                         targetFile.getAbsolutePath(),
                         getSourceFormat(sourceFile),
                         targetFormat,
                         true,
-                        System.currentTimeMillis()
+                        startNanos, sizeOf(sourceFile), sizeOf(targetFile), null
                     ));
                 } else {
                     statusLabel.setText("✗ Conversion failed. Please check the file format.");
                     statusLabel.getStyleClass().clear();
                     statusLabel.getStyleClass().add("error-text");
+                    historyRecorder.record(historyRecord(sourceFile.getAbsolutePath(), targetFile.getAbsolutePath(),
+                        getSourceFormat(sourceFile), targetFormat, false, startNanos, sizeOf(sourceFile), null,
+                        "The converter could not handle this file"));
                 }
                 statusLabel.setVisible(true);
             }
@@ -629,6 +919,9 @@ public class MainUIController implements Initializable {
                 statusLabel.getStyleClass().clear();
                 statusLabel.getStyleClass().add("error-text");
                 statusLabel.setVisible(true);
+                historyRecorder.record(historyRecord(sourceFile.getAbsolutePath(), targetFile.getAbsolutePath(),
+                    getSourceFormat(sourceFile), targetFormat, false, startNanos, sizeOf(sourceFile), null,
+                    getException().getMessage()));
             }
         };
 
@@ -644,10 +937,13 @@ public class MainUIController implements Initializable {
 
     private void performZipCreation(File sourceFolder, File zipFile, String password) {
         Task<Boolean> zipTask = new Task<Boolean>() {
+            private final long startNanos = System.nanoTime();
+            private Long inputBytes;
+
             @Override
             protected Boolean call() throws Exception {
                 updateProgress(0, 1);
-                return zipHandler.createZip(sourceFolder, zipFile, password);
+                return zipHandler.createZip(sourceFolder, zipFile, password, (files, bytes) -> inputBytes = bytes);
             }
 
             @Override
@@ -658,18 +954,20 @@ public class MainUIController implements Initializable {
                     zipStatusLabel.getStyleClass().clear();
                     zipStatusLabel.getStyleClass().add("success-text");
                     
-                    historyDAO.addConversionRecord(new ConversionRecord(
+                    historyRecorder.record(historyRecord(
                         sourceFolder.getAbsolutePath(),
                         zipFile.getAbsolutePath(),
                         "FOLDER",
                         "ZIP",
                         true,
-                        System.currentTimeMillis()
+                        startNanos, inputBytes, sizeOf(zipFile), null
                     ));
                 } else {
                     zipStatusLabel.setText("✗ ZIP creation failed. Please check folder permissions.");
                     zipStatusLabel.getStyleClass().clear();
                     zipStatusLabel.getStyleClass().add("error-text");
+                    historyRecorder.record(historyRecord(sourceFolder.getAbsolutePath(), zipFile.getAbsolutePath(),
+                        "FOLDER", "ZIP", false, startNanos, inputBytes, null, "The ZIP archive could not be created"));
                 }
                 zipStatusLabel.setVisible(true);
             }
@@ -681,6 +979,8 @@ public class MainUIController implements Initializable {
                 zipStatusLabel.getStyleClass().clear();
                 zipStatusLabel.getStyleClass().add("error-text");
                 zipStatusLabel.setVisible(true);
+                historyRecorder.record(historyRecord(sourceFolder.getAbsolutePath(), zipFile.getAbsolutePath(),
+                    "FOLDER", "ZIP", false, startNanos, null, null, getException().getMessage()));
             }
         };
 
@@ -694,6 +994,61 @@ public class MainUIController implements Initializable {
         new Thread(zipTask).start();
     }
 
+    /**
+     * This builds the history record for a finished or failed job, including how long it took since startNanos
+     * and how big its input and output were (null where that isn't known).
+     */
+    private ConversionRecord historyRecord(String sourcePath, String targetPath, String sourceFormat, String targetFormat,
+                                           boolean success, long startNanos, Long inputBytes, Long outputBytes, String errorMessage) {
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new ConversionRecord(0, sourcePath, targetPath, sourceFormat, targetFormat, success, LocalDateTime.now(),
+                durationMs, inputBytes, outputBytes, errorMessage);
+    }
+
+    /**
+     * @return The split size typed in megabytes, in bytes, or 0 if the field is empty.
+     * @throws IllegalArgumentException If it isn't a number, or is too small for a volume.
+     */
+    private static long splitSizeBytes(String megabytes) {
+        if (megabytes == null || megabytes.trim().isEmpty()) {
+            return 0;
+        }
+        double size;
+        try {
+            size = Double.parseDouble(megabytes.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The split size must be a number of MB, e.g. 100");
+        }
+        long bytes = (long) (size * 1024 * 1024);
+        if (bytes < ZipOptions.MIN_SPLIT_SIZE) {
+            throw new IllegalArgumentException("The split size must be at least 0.0625 MB (64 KB)");
+        }
+        return bytes;
+    }
+
+    /**
+     * The size of a file, or the total size of the files in a folder; null if it doesn't exist or can't be read.
+     * For a folder this walks the whole tree, so don't call it on the FX thread for one.
+     */
+    private static Long sizeOf(File file) {
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        if (file.isFile()) {
+            return file.length();
+        }
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    private static String sourceFormatOf(String sourcePath) {
+        String fileName = new File(sourcePath).getName();
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toUpperCase();
+    }
+
     private String getSourceFormat(File file) {
         String name = file.getName().toLowerCase();
         if (name.endsWith(".pdf")) return "PDF";
@@ -769,12 +1124,22 @@ public class MainUIController implements Initializable {
         
         sourceFolderField.setTooltip(new Tooltip("Select the folder you want to compress into a ZIP file"));
         zipOutputLocationField.setTooltip(new Tooltip("Choose where to save the ZIP file"));
+        zipArchiveFormatBox.setTooltip(new Tooltip("ZIP, or a tarball for Linux: .tar.gz opens everywhere, .tar.zst is faster and smaller;\nhow hard tarballs are compressed is set in Settings"));
+        zipConvertFormatBox.setTooltip(new Tooltip("Convert the files that can be converted to this format on their way into the ZIP;\nthe rest go in as they are"));
+        zipIncludeField.setTooltip(new Tooltip("Comma separated patterns of the files to zip, e.g. *.pdf;\na pattern with a / is matched against the path inside the folder"));
+        zipExcludeField.setTooltip(new Tooltip("Comma separated patterns of the files and folders to leave out,\ne.g. *.tmp, .git, build/**"));
+        zipSplitSizeField.setTooltip(new Tooltip("Split the ZIP into volumes of at most this many MB\n(name.z01, name.z02, ... and name.zip); leave empty for one file"));
+        updateExistingZipCheckbox.setTooltip(new Tooltip("Copy files that haven't changed straight from the existing ZIP\nand only compress new and changed ones; deleted files are dropped"));
         encryptCheckbox.setTooltip(new Tooltip("Enable password protection for your ZIP file"));
         passwordField.setTooltip(new Tooltip("Enter a password to protect your ZIP file"));
         passwordTextField.setTooltip(new Tooltip("Enter a password to protect your ZIP file"));
         showPasswordCheckbox.setTooltip(new Tooltip("Toggle password visibility"));
         zipProgressBar.setTooltip(new Tooltip("ZIP creation progress indicator"));
         zipStatusLabel.setTooltip(new Tooltip("Current ZIP creation status"));
+        extractArchiveField.setTooltip(new Tooltip("Select the ZIP archive you want to extract"));
+        extractDestinationField.setTooltip(new Tooltip("Choose where to extract the archive\n(leave empty for a folder named after it, next to it)"));
+        extractPasswordField.setTooltip(new Tooltip("The password the archive was protected with, if any"));
+        extractZipButton.setTooltip(new Tooltip("Extract the archive; click again to cancel"));
         
         if (browseFolderButton != null) {
             browseFolderButton.setTooltip(new Tooltip("Click to select a folder to compress"));
@@ -2,8 +2,11 @@ package ui.controllers;
 
 import java.io.File;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
 
+import handlers.TarHandler;
 import utils.SettingsManager;
 
 import javafx.collections.FXCollections;
@@ -24,11 +27,25 @@ public class SettingsUIController implements Initializable {
     @FXML private TextField defaultOutputLocationField;
     @FXML private ComboBox<String> fileNamingConventionBox;
     @FXML private CheckBox overwriteExistingFilesCheckbox;
+    @FXML private ComboBox<String> historyRetentionBox;
+    @FXML private ComboBox<String> archiveCompressionLevelBox;
     @FXML private Button browseButton;
     @FXML private Button resetButton;
     @FXML private Button saveButton;
     @FXML private Button cancelButton;
 
+    // Older history is folded into daily totals; the detailed records are only kept this long
+    private static final Map<String, Integer> RETENTION_CHOICES = new LinkedHashMap<>();
+    static {
+        RETENTION_CHOICES.put("Forever", 0);
+        RETENTION_CHOICES.put("30 days", 30);
+        RETENTION_CHOICES.put("90 days", 90);
+        RETENTION_CHOICES.put("180 days", 180);
+        RETENTION_CHOICES.put("1 year", 365);
+        RETENTION_CHOICES.put("2 years", 730);
+    }
+    private static final String DEFAULT_RETENTION = "Forever";
+
     private SettingsManager settingsManager;
 
     @Override
@@ -41,6 +58,14 @@ public class SettingsUIController implements Initializable {
             "Add _converted suffix"
         ));
         fileNamingConventionBox.setValue("Keep original name");
+
+        historyRetentionBox.setItems(FXCollections.observableArrayList(RETENTION_CHOICES.keySet()));
+        historyRetentionBox.setValue(DEFAULT_RETENTION);
+
+        for (TarHandler.Level level : TarHandler.Level.values()) {
+            archiveCompressionLevelBox.getItems().add(level.getLabel());
+        }
+        archiveCompressionLevelBox.setValue(TarHandler.Level.BALANCED.getLabel());
         
         loadSettings();
         
@@ -52,6 +77,8 @@ public class SettingsUIController implements Initializable {
         browseButton.setTooltip(new Tooltip("Browse for output folder"));
         fileNamingConventionBox.setTooltip(new Tooltip("Choose how converted files should be named"));
         overwriteExistingFilesCheckbox.setTooltip(new Tooltip("Automatically overwrite files with the same name"));
+        historyRetentionBox.setTooltip(new Tooltip("Older conversions are kept only as daily totals per format"));
+        archiveCompressionLevelBox.setTooltip(new Tooltip("How hard .tar.gz and .tar.zst archives are compressed:\nsmaller files take longer to make"));
         resetButton.setTooltip(new Tooltip("Reset all settings to default values"));
         saveButton.setTooltip(new Tooltip("Save current settings"));
         cancelButton.setTooltip(new Tooltip("Close without saving changes"));
@@ -67,6 +94,25 @@ public class SettingsUIController implements Initializable {
         fileNamingConventionBox.setValue(namingConvention);
         
         overwriteExistingFilesCheckbox.setSelected(settingsManager.getOverwriteExistingFiles());
+
+        int retentionDays = settingsManager.getHistoryRetentionDays();
+        String retentionChoice = null;
+        for (Map.Entry<String, Integer> choice : RETENTION_CHOICES.entrySet()) {
+            if (choice.getValue() == retentionDays) {
+                retentionChoice = choice.getKey();
+            }
+        }
+        if (retentionChoice == null) {
+            // A value typed into settings.properties by hand still shows up
+            retentionChoice = retentionDays + " days";
+            if (!historyRetentionBox.getItems().contains(retentionChoice)) {
+                historyRetentionBox.getItems().add(retentionChoice);
+            }
+        }
+        historyRetentionBox.setValue(retentionChoice);
+
+        archiveCompressionLevelBox.setValue(
+            TarHandler.Level.fromLabel(settingsManager.getArchiveCompressionLevel()).getLabel());
     }
 
     @FXML
@@ -94,6 +140,8 @@ public class SettingsUIController implements Initializable {
         defaultOutputLocationField.setText("");
         fileNamingConventionBox.setValue("Keep original name");
         overwriteExistingFilesCheckbox.setSelected(false);
+        historyRetentionBox.setValue(DEFAULT_RETENTION);
+        archiveCompressionLevelBox.setValue(TarHandler.Level.BALANCED.getLabel());
         
         showInformation("Settings Reset", "All settings have been reset to default values.");
     }
@@ -112,6 +160,18 @@ public class SettingsUIController implements Initializable {
             }
             
             settingsManager.setOverwriteExistingFiles(overwriteExistingFilesCheckbox.isSelected());
+
+            String retentionChoice = historyRetentionBox.getValue();
+            if (retentionChoice != null) {
+                Integer retentionDays = RETENTION_CHOICES.get(retentionChoice);
+                settingsManager.setHistoryRetentionDays(retentionDays != null ? retentionDays
+                    : Integer.parseInt(retentionChoice.replace(" days", "")));
+            }
+
+            String compressionLevel = archiveCompressionLevelBox.getValue();
+            if (compressionLevel != null) {
+                settingsManager.setArchiveCompressionLevel(compressionLevel);
+            }
         
             settingsManager.saveSettings();
             
@@ -0,0 +1,162 @@
+package ui.controllers;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import database.ConversionHistoryDAO;
+import database.HistoryRecorder;
+import models.ConversionStatistics;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.scene.chart.StackedBarChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+/**
+ * This is the Statistics window. Everything on it is read from the daily rollups, so it opens just as fast with
+ * ten million conversions in the history as with ten.
+ */
+public class StatisticsUIController {
+
+    @FXML private ComboBox<String> periodBox;
+    @FXML private Label summaryLabel;
+    @FXML private StackedBarChart<String, Number> conversionsChart;
+    @FXML private TableView<ConversionStatistics> pairTable;
+    @FXML private TableColumn<ConversionStatistics, String> sourceFormatColumn;
+    @FXML private TableColumn<ConversionStatistics, String> targetFormatColumn;
+    @FXML private TableColumn<ConversionStatistics, Long> conversionsColumn;
+    @FXML private TableColumn<ConversionStatistics, Long> failuresColumn;
+    @FXML private TableColumn<ConversionStatistics, String> failureRateColumn;
+    @FXML private TableColumn<ConversionStatistics, String> averageDurationColumn;
+    @FXML private TableColumn<ConversionStatistics, String> inputBytesColumn;
+    @FXML private TableColumn<ConversionStatistics, String> outputBytesColumn;
+
+    // Longer periods are charted per month, a bar per day would be unreadable
+    private static final int MAX_DAILY_BARS = 92;
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final ConversionHistoryDAO historyDAO = new ConversionHistoryDAO();
+
+    @FXML
+    private void initialize() {
+        sourceFormatColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getSourceFormat()));
+        targetFormatColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getTargetFormat()));
+        conversionsColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getConversions()));
+        failuresColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getFailures()));
+        failureRateColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(String.format("%.1f %%", cell.getValue().getFailureRate() * 100)));
+        averageDurationColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(String.format("%.0f ms", cell.getValue().getAverageDurationMs())));
+        inputBytesColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(formatBytes(cell.getValue().getInputBytes())));
+        outputBytesColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(formatBytes(cell.getValue().getOutputBytes())));
+
+        periodBox.setItems(FXCollections.observableArrayList(
+            "Last 7 Days", "Last 30 Days", "This Quarter", "This Year", "All Time"
+        ));
+        periodBox.setValue("Last 30 Days");
+        periodBox.setOnAction(e -> loadStatistics());
+        loadStatistics();
+    }
+
+    private void loadStatistics() {
+        LocalDate to = LocalDate.now();
+        LocalDate from = periodStart(periodBox.getValue(), to);
+        Task<List<List<ConversionStatistics>>> statisticsTask = new Task<List<List<ConversionStatistics>>>() {
+            @Override
+            protected List<List<ConversionStatistics>> call() {
+                // Records still waiting in the write-behind queue aren't in the rollups yet
+                HistoryRecorder.getInstance().flush();
+                return List.of(historyDAO.getPairStatistics(from, to), historyDAO.getDailyStatistics(from, to));
+            }
+
+            @Override
+            protected void succeeded() {
+                showStatistics(getValue().get(0), getValue().get(1), from, to);
+            }
+
+            @Override
+            protected void failed() {
+                summaryLabel.setText("Could not load statistics: " + getException().getMessage());
+            }
+        };
+        Thread thread = new Thread(statisticsTask, "statistics-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private LocalDate periodStart(String period, LocalDate today) {
+        switch (period) {
+            case "Last 7 Days":
+                return today.minusDays(6);
+            case "This Quarter":
+                return today.withMonth((today.getMonthValue() - 1) / 3 * 3 + 1).withDayOfMonth(1);
+            case "This Year":
+                return today.withDayOfYear(1);
+            case "All Time":
+                return LocalDate.of(1970, 1, 1);
+            case "Last 30 Days":
+            default:
+                return today.minusDays(29);
+        }
+    }
+
+    private void showStatistics(List<ConversionStatistics> pairs, List<ConversionStatistics> days, LocalDate from, LocalDate to) {
+        pairTable.setItems(FXCollections.observableArrayList(pairs));
+
+        long conversions = 0;
+        long failures = 0;
+        for (ConversionStatistics pair : pairs) {
+            conversions += pair.getConversions();
+            failures += pair.getFailures();
+        }
+        summaryLabel.setText(conversions + " conversions, " + failures + " failed"
+            + (conversions == 0 ? "" : String.format(" (%.1f %%)", 100.0 * failures / conversions)));
+
+        // An "All Time" period starts in 1970, so the chart starts at the first day that actually has conversions
+        LocalDate firstDay = days.isEmpty() ? from : days.get(0).getDay();
+        boolean monthly = firstDay.plusDays(MAX_DAILY_BARS).isBefore(to);
+        Map<String, Map<String, Long>> countsByFormat = new TreeMap<>();
+        TreeSet<String> buckets = new TreeSet<>();
+        for (ConversionStatistics day : days) {
+            String bucket = monthly ? day.getDay().format(MONTH_FORMAT) : day.getDay().toString();
+            buckets.add(bucket);
+            countsByFormat.computeIfAbsent(day.getTargetFormat(), format -> new LinkedHashMap<>())
+                .merge(bucket, day.getConversions(), Long::sum);
+        }
+
+        conversionsChart.getData().clear();
+        conversionsChart.setTitle(monthly ? "Conversions per month by target format" : "Conversions per day by target format");
+        for (Map.Entry<String, Map<String, Long>> format : countsByFormat.entrySet()) {
+            XYChart.Series<String, Number> series = new XYChart.Series<>();
+            series.setName(format.getKey());
+            for (String bucket : buckets) {
+                series.getData().add(new XYChart.Data<>(bucket, format.getValue().getOrDefault(bucket, 0L)));
+            }
+            conversionsChart.getData().add(series);
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+}
@@ -4,29 +4,82 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
+/**
+ * These are my application settings, kept in settings.properties next to the app.
+ * The settings are held as an immutable Snapshot with every value already parsed, published through an
+ * AtomicReference: a getter is one volatile read and a field, with no lock, so the conversion workers never wait on
+ * each other or on the FX thread. A setter copies the snapshot with the one value changed and swaps it in.
+ * Setters don't write the file themselves. A background thread writes it a moment later, so a burst of changes
+ * (a batch remembering the last folder for every file, say) becomes one write, and the FX thread never waits on the
+ * disk. Writes go to a temporary file that is synced and then renamed over the real one, so a crash or power cut
+ * mid-write leaves the old settings, never half a file.
+ * The folder is watched too, so when settings.properties is edited by hand the new values are picked up without a
+ * restart. Changes made in the app and not written yet win over an edit on disk.
+ * saveSettings writes straight away, and shutdown writes anything still pending when the app closes.
+ */
 public class SettingsManager {
 
     private static final String SETTINGS_FILE = "settings.properties";
-    private static SettingsManager instance;
-    private Properties properties = new Properties();
+    private static final String TEMP_FILE = SETTINGS_FILE + ".tmp";
+    private static final long SAVE_DELAY_MS = 500;
+    // Editors can write a file in several goes; this waits for them to finish before reading it
+    private static final long RELOAD_SETTLE_MS = 200;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd_MM_yyyy-HH_mm_ss");
+
+    private final Path settingsPath = Path.of(SETTINGS_FILE).toAbsolutePath();
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final ScheduledExecutorService saver;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final Object saveLock = new Object();
+    // The version of the last snapshot written to (or read from) the file
+    private long savedVersion;
+    private WatchService watcher;
+
+    /**
+     * The instance is made the first time Holder is touched, which the JVM does exactly once, so getInstance needs
+     * no lock.
+     */
+    private static final class Holder {
+        static final SettingsManager INSTANCE = new SettingsManager();
+    }
 
     private SettingsManager() {
-        loadSettings();
+        current.set(new Snapshot(readSettingsFile(), 0));
+        saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "settings-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startWatching();
     }
 
-    public static synchronized SettingsManager getInstance() {
-        if (instance == null) {
-            instance = new SettingsManager();
-        }
-        return instance;
+    public static SettingsManager getInstance() {
+        return Holder.INSTANCE;
     }
 
-    private void loadSettings() {
-        File file = new File(SETTINGS_FILE);
+    private Properties readSettingsFile() {
+        Properties properties = new Properties();
+        File file = settingsPath.toFile();
         if (file.exists()) {
             try (FileInputStream fis = new FileInputStream(file)) {
                 properties.load(fis);
@@ -35,126 +88,404 @@ public class SettingsManager {
                 e.printStackTrace();
             }
         }
+        return properties;
     }
 
+    /**
+     * This reads settings.properties again, after writing out anything not saved yet so it isn't lost.
+     */
     public void reloadSettings() {
-        loadSettings();
+        saveSettings();
+        reloadFromDisk();
     }
 
+    /**
+     * This takes the settings from the file, unless there are changes in memory the file doesn't have yet; those
+     * are about to be written over it anyway.
+     */
+    private void reloadFromDisk() {
+        synchronized (saveLock) {
+            Snapshot observed = current.get();
+            if (observed.version != savedVersion) {
+                return;
+            }
+            Properties loaded = readSettingsFile();
+            // The file changing because it was just saved from here isn't news. If a setter swapped in a new
+            // snapshot while the file was read, it wins, and its save writes over the file shortly.
+            if (!loaded.equals(observed.properties)) {
+                current.compareAndSet(observed, new Snapshot(loaded, observed.version));
+            }
+        }
+    }
+
+    /**
+     * This writes the settings out now, if anything changed since they were last written.
+     */
     public void saveSettings() {
-        try (FileOutputStream fos = new FileOutputStream(SETTINGS_FILE)) {
-            properties.store(fos, "FileX Application Settings");
-        } catch (IOException e) {
-            System.err.println("Error saving settings: " + e.getMessage());
-            e.printStackTrace();
+        synchronized (saveLock) {
+            Snapshot snapshot = current.get();
+            if (snapshot.version == savedVersion) {
+                return;
+            }
+            try {
+                // The snapshot never changes once published, so setters carry on while it is written
+                writeAtomically(snapshot.properties);
+                savedVersion = snapshot.version;
+            } catch (IOException e) {
+                System.err.println("Error saving settings: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * This writes anything still pending and stops the background saver and the file watcher. Called when the app
+     * closes.
+     */
+    public void shutdown() {
+        saver.shutdownNow();
+        // A cancelled save no longer counts as coming; any later change saves straight away
+        saveScheduled.set(false);
+        saveSettings();
+        synchronized (this) {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing settings watcher: " + e.getMessage());
+                }
+                watcher = null;
+            }
+        }
+    }
+
+    private void writeAtomically(Properties snapshot) throws IOException {
+        Path temp = settingsPath.resolveSibling(TEMP_FILE);
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            snapshot.store(fos, "FileX Application Settings");
+            // On disk before the rename, or a crash could leave the new name pointing at an empty file
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(temp, settingsPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, settingsPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * This watches the settings folder on a daemon thread and reloads when settings.properties is changed or
+     * replaced. If the file system can't be watched the settings just don't hot reload.
+     */
+    private synchronized void startWatching() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            settingsPath.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Settings won't reload on their own: " + e.getMessage());
+            return;
+        }
+        WatchService service = watcher;
+        Thread thread = new Thread(() -> watchLoop(service), "settings-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watchLoop(WatchService service) {
+        Path fileName = settingsPath.getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = touchesSettings(key, fileName);
+                // Let a burst of events (an editor saving, or a save from here) settle into one reload
+                while ((key = service.poll(RELOAD_SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= touchesSettings(key, fileName);
+                }
+                if (changed) {
+                    reloadFromDisk();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Shut down
+        }
+    }
+
+    private static boolean touchesSettings(WatchKey key, Path fileName) {
+        boolean touches = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                touches = true;
+            }
+        }
+        key.reset();
+        return touches;
+    }
+
+    /**
+     * This publishes a snapshot with one value changed and the next version, and makes sure a save is coming;
+     * changes until then go into the same save. The version travels in the snapshot, so a save or a reload always
+     * sees a value and its version together.
+     */
+    private void set(String key, String value) {
+        Snapshot previous;
+        Snapshot next;
+        do {
+            previous = current.get();
+            Properties properties = (Properties) previous.properties.clone();
+            properties.setProperty(key, value);
+            next = new Snapshot(properties, previous.version + 1);
+        } while (!current.compareAndSet(previous, next));
+        scheduleSave();
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            try {
+                saver.schedule(() -> {
+                    saveScheduled.set(false);
+                    saveSettings();
+                }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Already shut down, so nothing else is going to save it
+                saveScheduled.set(false);
+                saveSettings();
+            }
         }
     }
 
     public String getDefaultOutputLocation() {
-        return properties.getProperty("defaultOutputLocation");
+        return current.get().defaultOutputLocation;
     }
 
     public void setDefaultOutputLocation(String path) {
-        properties.setProperty("defaultOutputLocation", path);
-        saveSettings();
+        set("defaultOutputLocation", path);
     }
 
     public boolean getOverwriteExistingFiles() {
-        return Boolean.parseBoolean(properties.getProperty("overwriteExistingFiles", "false"));
+        return current.get().overwriteExistingFiles;
     }
 
     public void setOverwriteExistingFiles(boolean overwrite) {
-        properties.setProperty("overwriteExistingFiles", String.valueOf(overwrite));
-        saveSettings();
+        set("overwriteExistingFiles", String.valueOf(overwrite));
     }
 
     public boolean getShowConfirmationDialogs() {
-        return Boolean.parseBoolean(properties.getProperty("showConfirmationDialogs", "true"));
+        return current.get().showConfirmationDialogs;
     }
 
     public void setShowConfirmationDialogs(boolean show) {
-        properties.setProperty("showConfirmationDialogs", String.valueOf(show));
-        saveSettings();
+        set("showConfirmationDialogs", String.valueOf(show));
     }
 
+    /**
+     * Whether finished conversions, archives and extractions go into the history. Failures are always recorded,
+     * whatever this says, since those are the ones worth looking back at.
+     */
     public boolean getLogSuccessfulConversions() {
-        return Boolean.parseBoolean(properties.getProperty("logSuccessfulConversions", "true"));
+        return current.get().logSuccessfulConversions;
     }
 
     public void setLogSuccessfulConversions(boolean log) {
-        properties.setProperty("logSuccessfulConversions", String.valueOf(log));
-        saveSettings();
+        set("logSuccessfulConversions", String.valueOf(log));
     }
 
     public boolean getEnableVerboseLogging() {
-        return Boolean.parseBoolean(properties.getProperty("enableVerboseLogging", "false"));
+        return current.get().enableVerboseLogging;
     }
 
     public void setEnableVerboseLogging(boolean enable) {
-        properties.setProperty("enableVerboseLogging", String.valueOf(enable));
-        saveSettings();
+        set("enableVerboseLogging", String.valueOf(enable));
+    }
+
+    public boolean getEnableFlightRecording() {
+        return current.get().enableFlightRecording;
+    }
+
+    public void setEnableFlightRecording(boolean enable) {
+        set("enableFlightRecording", String.valueOf(enable));
+    }
+
+    public long getFlightRecordingMaxSizeMb() {
+        return current.get().flightRecordingMaxSizeMb;
+    }
+
+    public void setFlightRecordingMaxSizeMb(long sizeMb) {
+        set("flightRecordingMaxSizeMb", String.valueOf(sizeMb));
+    }
+
+    /**
+     * How many days of individual history records to keep before they are folded into daily rollups; 0, the default,
+     * keeps them forever, so nothing is pruned unless it was asked for.
+     */
+    public int getHistoryRetentionDays() {
+        return current.get().historyRetentionDays;
+    }
+
+    public void setHistoryRetentionDays(int days) {
+        set("historyRetentionDays", String.valueOf(days));
+    }
+
+    /**
+     * How hard tarballs are compressed: "Fastest", "Balanced" or "Smallest", see TarHandler.Level.
+     */
+    public String getArchiveCompressionLevel() {
+        return current.get().archiveCompressionLevel;
+    }
+
+    public void setArchiveCompressionLevel(String level) {
+        set("archiveCompressionLevel", level);
     }
 
     public String getLogFilePath() {
-        return properties.getProperty("logFilePath");
+        return current.get().logFilePath;
     }
 
     public void setLogFilePath(String path) {
-        properties.setProperty("logFilePath", path);
-        saveSettings();
+        set("logFilePath", path);
     }
 
     public String getLastZipOutputLocation() {
-        return properties.getProperty("lastZipOutputLocation");
+        return current.get().lastZipOutputLocation;
     }
 
     public void setLastZipOutputLocation(String location) {
-        properties.setProperty("lastZipOutputLocation", location);
-        saveSettings();
+        set("lastZipOutputLocation", location);
     }
 
     public String getLastFileLocation() {
-        return properties.getProperty("lastFileLocation");
+        return current.get().lastFileLocation;
     }
 
     public void setLastFileLocation(String location) {
-        properties.setProperty("lastFileLocation", location);
-        saveSettings();
+        set("lastFileLocation", location);
     }
 
     public String getLastOutputLocation() {
-        return properties.getProperty("lastOutputLocation");
+        return current.get().lastOutputLocation;
     }
 
     public void setLastOutputLocation(String location) {
-        properties.setProperty("lastOutputLocation", location);
-        saveSettings();
+        set("lastOutputLocation", location);
     }
 
     public String getFileNamingConvention() {
-        return properties.getProperty("fileNamingConvention", "Keep original name");
+        return current.get().fileNamingConvention;
     }
 
     public void setFileNamingConvention(String convention) {
-        properties.setProperty("fileNamingConvention", convention);
-        saveSettings();
+        set("fileNamingConvention", convention);
     }
 
     public String applyFileNamingConvention(String baseFileName, String extension) {
-        String convention = getFileNamingConvention();
-        
-        switch (convention) {
-            case "Add timestamp":
-                LocalDateTime now = LocalDateTime.now();
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd_MM_yyyy-HH_mm_ss");
-                return baseFileName + "_" + now.format(formatter) + extension;
-                
-            case "Add _converted suffix":
-                return baseFileName + "_converted" + extension;
-                
-            case "Keep original name":
-            default:
+        return current.get().naming.apply(baseFileName, extension);
+    }
+
+    /**
+     * The naming conventions the settings offer, each worked out once when the settings are read rather than for
+     * every file.
+     */
+    private enum NamingTemplate {
+        KEEP_ORIGINAL {
+            @Override
+            String apply(String baseFileName, String extension) {
                 return baseFileName + extension;
+            }
+        },
+        TIMESTAMP {
+            @Override
+            String apply(String baseFileName, String extension) {
+                return baseFileName + "_" + LocalDateTime.now().format(TIMESTAMP_FORMAT) + extension;
+            }
+        },
+        CONVERTED_SUFFIX {
+            @Override
+            String apply(String baseFileName, String extension) {
+                return baseFileName + "_converted" + extension;
+            }
+        };
+
+        abstract String apply(String baseFileName, String extension);
+
+        static NamingTemplate forConvention(String convention) {
+            switch (convention) {
+                case "Add timestamp":
+                    return TIMESTAMP;
+                case "Add _converted suffix":
+                    return CONVERTED_SUFFIX;
+                case "Keep original name":
+                default:
+                    return KEEP_ORIGINAL;
+            }
+        }
+    }
+
+    /**
+     * One immutable set of settings with every value parsed and defaulted up front. The Properties it was made from
+     * is its own copy and is never changed afterwards, so it can be written out or compared without a lock.
+     */
+    private static final class Snapshot {
+        final Properties properties;
+        // Goes up by one with every change made in the app
+        final long version;
+        final String defaultOutputLocation;
+        final boolean overwriteExistingFiles;
+        final boolean showConfirmationDialogs;
+        final boolean logSuccessfulConversions;
+        final boolean enableVerboseLogging;
+        final boolean enableFlightRecording;
+        final long flightRecordingMaxSizeMb;
+        final int historyRetentionDays;
+        final String archiveCompressionLevel;
+        final String logFilePath;
+        final String lastZipOutputLocation;
+        final String lastFileLocation;
+        final String lastOutputLocation;
+        final String fileNamingConvention;
+        final NamingTemplate naming;
+
+        Snapshot(Properties properties, long version) {
+            this.properties = properties;
+            this.version = version;
+            defaultOutputLocation = properties.getProperty("defaultOutputLocation");
+            overwriteExistingFiles = Boolean.parseBoolean(properties.getProperty("overwriteExistingFiles", "false"));
+            showConfirmationDialogs = Boolean.parseBoolean(properties.getProperty("showConfirmationDialogs", "true"));
+            logSuccessfulConversions = Boolean.parseBoolean(properties.getProperty("logSuccessfulConversions", "true"));
+            enableVerboseLogging = Boolean.parseBoolean(properties.getProperty("enableVerboseLogging", "false"));
+            enableFlightRecording = Boolean.parseBoolean(properties.getProperty("enableFlightRecording", "false"));
+            flightRecordingMaxSizeMb = parseLong(properties.getProperty("flightRecordingMaxSizeMb"), 64);
+            historyRetentionDays = parseInt(properties.getProperty("historyRetentionDays"), 0);
+            archiveCompressionLevel = properties.getProperty("archiveCompressionLevel", "Balanced");
+            logFilePath = properties.getProperty("logFilePath");
+            lastZipOutputLocation = properties.getProperty("lastZipOutputLocation");
+            lastFileLocation = properties.getProperty("lastFileLocation");
+            lastOutputLocation = properties.getProperty("lastOutputLocation");
+            fileNamingConvention = properties.getProperty("fileNamingConvention", "Keep original name");
+            naming = NamingTemplate.forConvention(fileNamingConvention);
+        }
+
+        private static int parseInt(String value, int defaultValue) {
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        private static long parseLong(String value, long defaultValue) {
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
         }
     }
-}
\ No newline at end of file
+}